@@ -0,0 +1,104 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.benchmark;
+
+import com.logicmonitor.sdk.data.Configuration;
+import com.logicmonitor.sdk.data.api.Logs;
+import com.logicmonitor.sdk.data.api.Metrics;
+import com.logicmonitor.sdk.data.model.DataPoint;
+import com.logicmonitor.sdk.data.model.DataSource;
+import com.logicmonitor.sdk.data.model.DataSourceInstance;
+import com.logicmonitor.sdk.data.model.Resource;
+import com.logicmonitor.sdk.data.transport.InMemoryTransport;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the batching sendMetrics and sendLogs calls, through the request queue (ringBufferSize
+ * 0) and through the ring buffer of preallocated records. Merging and sending run on the worker
+ * threads against an InMemoryTransport, records the buffer has no room for are dropped, which
+ * costs the same emit path.
+ *
+ * <p>Run with the gc profiler for the allocation rate, the gc.alloc.rate.norm rows are the bytes
+ * allocated per call: ./gradlew :data-sdk:jmh -PjmhIncludes=EmitBenchmark -PjmhProfilers=gc
+ *
+ * <p>TestMetrics only checks that the emit path through the ring buffer allocates a fraction of
+ * what the queue path does, the rows of this benchmark give the bytes per call of both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmitBenchmark {
+
+  @Param({"0", "65536"})
+  public int ringBufferSize;
+
+  private Metrics metrics;
+  private Logs logs;
+
+  private final Resource resource = new Resource();
+  private final DataSource dataSource = new DataSource();
+  private final DataSourceInstance dataSourceInstance = new DataSourceInstance();
+  private final DataPoint dataPoint = new DataPoint();
+  private final Map<String, String> values = new HashMap<>();
+  private final Map<String, String> resourceId = new HashMap<>();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Configuration.setRingBufferSize(ringBufferSize);
+    metrics = new Metrics(Configuration.getConfiguration(), 10, true);
+    metrics.setTransport(new InMemoryTransport());
+    logs = new Logs(Configuration.getConfiguration(), 10, true);
+    logs.setTransport(new InMemoryTransport());
+
+    final Map<String, String> ids = new HashMap<>();
+    ids.put("system.hostname", "benchmark-host");
+    resource.setIds(ids);
+    resource.setName("benchmark-host");
+    dataSource.setName("Benchmark");
+    dataSource.setSingleInstanceDS(false);
+    dataSourceInstance.setName("instance");
+    dataPoint.setName("cpuUsage");
+    values.put("1646816195", "10");
+    resourceId.put("system.hostname", "benchmark-host");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    metrics.close(10, TimeUnit.SECONDS);
+    logs.close(10, TimeUnit.SECONDS);
+    Configuration.setRingBufferSize(0);
+  }
+
+  @Benchmark
+  public Object sendMetrics() throws Exception {
+    return metrics.sendMetrics(resource, dataSource, dataSourceInstance, dataPoint, values);
+  }
+
+  @Benchmark
+  public Object sendLogs() throws Exception {
+    return logs.sendLogs("benchmark message", "info", resourceId, null, 1646816195000L);
+  }
+}
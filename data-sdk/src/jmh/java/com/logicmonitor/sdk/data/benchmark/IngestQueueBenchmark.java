@@ -0,0 +1,127 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.benchmark;
+
+import com.logicmonitor.sdk.data.internal.MpscChunkedQueue;
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Producer throughput of the addRequest queue with 1, 8 and 64 producer threads and the single
+ * merge thread draining it: the former LinkedList guarded by queueLock against MpscChunkedQueue.
+ * The offer rows of each group are the producer throughput. Run with ./gradlew :data-sdk:jmh
+ * -PjmhIncludes=IngestQueueBenchmark
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestQueueBenchmark {
+
+  private static final Object ELEMENT = new Object();
+
+  @Param({"locked", "mpsc"})
+  public String queueType;
+
+  private Queue<Object> queue;
+
+  @Setup
+  public void setUp() {
+    queue = "mpsc".equals(queueType) ? new MpscChunkedQueue<>() : new LockedQueue<>();
+  }
+
+  @Benchmark
+  @Group("producers1")
+  @GroupThreads(1)
+  public boolean offer1() {
+    return queue.offer(ELEMENT);
+  }
+
+  @Benchmark
+  @Group("producers1")
+  @GroupThreads(1)
+  public Object poll1() {
+    return queue.poll();
+  }
+
+  @Benchmark
+  @Group("producers8")
+  @GroupThreads(8)
+  public boolean offer8() {
+    return queue.offer(ELEMENT);
+  }
+
+  @Benchmark
+  @Group("producers8")
+  @GroupThreads(1)
+  public Object poll8() {
+    return queue.poll();
+  }
+
+  @Benchmark
+  @Group("producers64")
+  @GroupThreads(64)
+  public boolean offer64() {
+    return queue.offer(ELEMENT);
+  }
+
+  @Benchmark
+  @Group("producers64")
+  @GroupThreads(1)
+  public Object poll64() {
+    return queue.poll();
+  }
+
+  /** The queue BatchingCache used before, a LinkedList behind one monitor. */
+  private static final class LockedQueue<E> extends AbstractQueue<E> {
+    private final LinkedList<E> list = new LinkedList<>();
+
+    @Override
+    public synchronized boolean offer(final E e) {
+      return list.offer(e);
+    }
+
+    @Override
+    public synchronized E poll() {
+      return list.poll();
+    }
+
+    @Override
+    public synchronized E peek() {
+      return list.peek();
+    }
+
+    @Override
+    public synchronized int size() {
+      return list.size();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -12,35 +12,45 @@ import org.openapitools.client.ApiClient;
 /** This Class extends ApiClient Class for setting UserAgent */
 public class ApiClientUserAgent extends ApiClient {
 
-  Setup setup = new Setup();
-
   public ApiClientUserAgent() {
-    setUserAgent(
-        String.format(setup.getPACKAGE_ID())
-            .concat(
-                setup.getPACKAGE_VERSION()
-                    + " (Java "
-                    + setup.getJAVA_VERSION()
-                    + ";"
-                    + setup.getOS_NAME()
-                    + ";arch "
-                    + setup.getARCH()
-                    + ")"));
+    setUserAgent(getUserAgent(""));
   }
 
   public ApiClientUserAgent(String userAgentSuffix) {
-    setUserAgent(
-        String.format(setup.getPACKAGE_ID())
-            .concat(
-                setup.getPACKAGE_VERSION()
-                    + " (Java "
-                    + setup.getJAVA_VERSION()
-                    + ";"
-                    + setup.getOS_NAME()
-                    + ";arch "
-                    + setup.getARCH()
-                    + ")"
-                    + userAgentSuffix));
+    setUserAgent(getUserAgent(userAgentSuffix));
+  }
+
+  /**
+   * @param userAgentSuffix appended after the platform details
+   * @return User-Agent sent with every request
+   */
+  public static String getUserAgent(String userAgentSuffix) {
+    Setup setup = new Setup();
+    return String.format(setup.getPACKAGE_ID())
+        .concat(
+            setup.getPACKAGE_VERSION()
+                + " (Java "
+                + setup.getJAVA_VERSION()
+                + ";"
+                + setup.getOS_NAME()
+                + ";arch "
+                + setup.getARCH()
+                + ")"
+                + userAgentSuffix);
+  }
+
+  /**
+   * @param applicationName name of the application, usually the APPLICATION_NAME environment
+   *     variable
+   * @return "/" followed by the application name, empty when it is missing or longer than 32
+   *     characters
+   */
+  public static String getUserAgentSuffix(String applicationName) {
+    String suffix = "";
+    if (applicationName != null && applicationName.length() <= 32) {
+      suffix = "/" + applicationName;
+    }
+    return suffix;
   }
 
   /**
@@ -7,10 +7,15 @@
  */
 package com.logicmonitor.sdk.data;
 
+import com.logicmonitor.sdk.data.internal.LMv1Signer;
+import com.logicmonitor.sdk.data.internal.RingBuffer;
+import com.logicmonitor.sdk.data.internal.SdkRuntime;
+import com.logicmonitor.sdk.data.transport.OkHttpTransport;
+import com.logicmonitor.sdk.data.transport.Transport;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.Base64;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
@@ -24,6 +29,9 @@ import org.apache.commons.lang3.StringUtils;
 @Setter
 public class Configuration {
 
+  /** Default buffer capacity, no request is dropped for lack of room. */
+  public static final int UNBOUNDED_BUFFER_CAPACITY = Integer.MAX_VALUE;
+
   private final String REGEX_COMPANY_NAME = "^[a-zA-Z0-9_.\\-]+$";
   private final Pattern patternCompanyName = Pattern.compile(REGEX_COMPANY_NAME);
   private final String REGEX_AUTH_ID = "^[a-zA-Z0-9]+$";
@@ -31,9 +39,27 @@ public class Configuration {
   private static String company;
   private static String domainName;
   private static String host;
-  private int connectionPoolMaxsize;
-
-  private Boolean asyncRequest;
+  private static int connectionPoolMaxsize = Runtime.getRuntime().availableProcessors() * 5;
+  private static long keepAliveDuration = 300;
+
+  private static boolean asyncRequest = false;
+  private static int maxInFlightRequests = 100;
+  private static int flushParallelism = 4;
+  private static int maxRetries = 3;
+  private static long retryBaseDelay = 500;
+  private static long retryMaxDelay = 30000;
+  private static boolean prewarmConnections = false;
+  private static int flushThreshold = 5000;
+  private static int bufferCapacity = UNBOUNDED_BUFFER_CAPACITY;
+  private static OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+  private static long overflowTimeout = 1000;
+  private static int workerThreads = 2;
+  private static int cacheShards = 1;
+  private static boolean adaptiveBatching = false;
+  private static long targetLatency = 1000;
+  private static boolean virtualThreads = true;
+  private static int ringBufferSize = 0;
+  private static int offHeapStagingBytes = 0;
   private static String accessId;
   private static String accessKey;
   private static String bearerToken;
@@ -41,8 +67,12 @@ public class Configuration {
 
   private static boolean gZip = true;
 
+  private static int gzipCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+
   private static int requestPerMinute = 100;
 
+  private static volatile Transport transport;
+
   /**
    * LM_COMPANY company name LM_ACCESS_ID Access Id for LMv1 LM_ACCESS_KEY Access key for LMv1
    * LM_BEARER_TOKEN BEARER_TOKEN
@@ -80,23 +110,7 @@ public class Configuration {
    * @return String
    */
   public static String convertToHex(byte[] data) {
-    StringBuffer buf = new StringBuffer();
-
-    for (int i = 0; i < data.length; ++i) {
-      int halfbyte = data[i] >>> 4 & 15;
-      int two_halfs = 0;
-
-      do {
-        if (0 <= halfbyte && halfbyte <= 9) {
-          buf.append((char) (48 + halfbyte));
-        } else {
-          buf.append((char) (97 + (halfbyte - 10)));
-        }
-
-        halfbyte = data[i] & 15;
-      } while (two_halfs++ < 1);
-    }
-    return buf.toString();
+    return new String(LMv1Signer.hex(data), StandardCharsets.US_ASCII);
   }
 
   /**
@@ -168,7 +182,6 @@ public class Configuration {
       domainName = "logicmonitor.com";
     }
     this.host = "https://" + company + "." + domainName + "/rest";
-    this.connectionPoolMaxsize = Runtime.getRuntime().availableProcessors() * 5;
     return true;
   }
 
@@ -195,33 +208,51 @@ public class Configuration {
    * @return String
    */
   public static String getAuthToken(Object body, String method, String resourcePath) {
-    String token = null;
-    if (accessId != null && accessKey != null) {
-      long epoch = Instant.now().toEpochMilli();
-      String msg = null;
-      if (body != null) {
-        msg = method + epoch + body + resourcePath;
-      } else {
-        msg = method + epoch + resourcePath;
-      }
-
-      try {
-        String signature =
-            Base64.getEncoder().encodeToString(encodeSHA256(accessKey, msg).getBytes());
+    if (body == null) {
+      return getAuthToken(null, 0, method, resourcePath);
+    }
+    final byte[] bytes = String.valueOf(body).getBytes(StandardCharsets.UTF_8);
+    return getAuthToken(bytes, bytes.length, method, resourcePath);
+  }
 
-        token = "LMv1 " + accessId + ":" + signature + ":" + epoch;
-      } catch (Exception e) {
-        throw new RuntimeException("Invalid key exception while converting to HMac SHA256");
-      }
-    } else {
-      token = "Bearer " + bearerToken;
+  /**
+   * Signs a serialized body without copying it into a String, see LMv1Signer.
+   *
+   * @param body buffer holding the serialized body, may be null
+   * @param length number of bytes of body to sign
+   * @param method
+   * @param resourcePath
+   * @return String
+   */
+  public static String getAuthToken(byte[] body, int length, String method, String resourcePath) {
+    if (accessId == null || accessKey == null) {
+      return "Bearer " + bearerToken;
     }
-    return token;
+    return LMv1Signer.sign(
+        accessId, accessKey, method, Instant.now().toEpochMilli(), body, length, resourcePath);
   }
 
-  /** @return boolean */
+  /** @return true when Metrics and Logs send their requests without waiting for the response */
   public static boolean getAsyncRequest() {
-    return Boolean.FALSE;
+    return asyncRequest;
+  }
+
+  /** @param asyncRequest */
+  public static void setAsyncRequest(boolean asyncRequest) {
+    Configuration.asyncRequest = asyncRequest;
+  }
+
+  /** @return maximum number of asynchronous requests in flight at once */
+  public static int getMaxInFlightRequests() {
+    return maxInFlightRequests;
+  }
+
+  /** @param maxInFlightRequests */
+  public static void setMaxInFlightRequests(int maxInFlightRequests) {
+    if (maxInFlightRequests <= 0) {
+      throw new IllegalArgumentException("Max in-flight requests must be greater than 0");
+    }
+    Configuration.maxInFlightRequests = maxInFlightRequests;
   }
 
   /** @return configuration */
@@ -248,6 +279,322 @@ public class Configuration {
     Configuration.gZip = gZip;
   }
 
+  /** @return maximum number of pooled (and concurrently used) connections to LogicMonitor */
+  public static int getConnectionPoolMaxsize() {
+    return connectionPoolMaxsize;
+  }
+
+  /**
+   * Sets the size of the connection pool shared by every Metrics and Logs instance. Takes effect
+   * the next time the shared client is created, see {@link
+   * com.logicmonitor.sdk.data.internal.SharedApiClient#reset()}.
+   *
+   * @param connectionPoolMaxsize
+   */
+  public static void setConnectionPoolMaxsize(int connectionPoolMaxsize) {
+    if (connectionPoolMaxsize <= 0) {
+      throw new IllegalArgumentException("Connection pool size must be greater than 0");
+    }
+    Configuration.connectionPoolMaxsize = connectionPoolMaxsize;
+  }
+
+  /** @return keepAliveDuration in seconds an idle pooled connection is kept open */
+  public static long getKeepAliveDuration() {
+    return keepAliveDuration;
+  }
+
+  /** @param keepAliveDuration in seconds */
+  public static void setKeepAliveDuration(long keepAliveDuration) {
+    if (keepAliveDuration <= 0) {
+      throw new IllegalArgumentException("Keep alive duration must be greater than 0");
+    }
+    Configuration.keepAliveDuration = keepAliveDuration;
+  }
+
+  /** @return gzipCompressionLevel */
+  public static int getGzipCompressionLevel() {
+    return gzipCompressionLevel;
+  }
+
+  /**
+   * Sets the Deflater level used when gZip is enabled, from 1 (fastest) to 9 (smallest), 0 for no
+   * compression or -1 for the default level.
+   *
+   * @param gzipCompressionLevel
+   */
+  public static void setGzipCompressionLevel(int gzipCompressionLevel) {
+    if (gzipCompressionLevel != Deflater.DEFAULT_COMPRESSION
+        && (gzipCompressionLevel < Deflater.NO_COMPRESSION
+            || gzipCompressionLevel > Deflater.BEST_COMPRESSION)) {
+      throw new IllegalArgumentException("Invalid gzip compression level");
+    }
+    Configuration.gzipCompressionLevel = gzipCompressionLevel;
+  }
+
+  /** @return maximum number of payloads of one flush sent concurrently */
+  public static int getFlushParallelism() {
+    return flushParallelism;
+  }
+
+  /**
+   * Sets how many independent payloads a batching flush sends at once, 1 sends them one after the
+   * other.
+   *
+   * @param flushParallelism
+   */
+  public static void setFlushParallelism(int flushParallelism) {
+    if (flushParallelism <= 0) {
+      throw new IllegalArgumentException("Flush parallelism must be greater than 0");
+    }
+    Configuration.flushParallelism = flushParallelism;
+  }
+
+  /** @return maximum number of times a failed ingest request is sent again */
+  public static int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * Sets how many times a request failing with a network error, 408, 429 or 5xx is sent again, 0
+   * disables retries.
+   *
+   * @param maxRetries
+   */
+  public static void setMaxRetries(int maxRetries) {
+    if (maxRetries < 0) {
+      throw new IllegalArgumentException("Max retries must not be negative");
+    }
+    Configuration.maxRetries = maxRetries;
+  }
+
+  /** @return retryBaseDelay in milliseconds, the backoff ceiling of the first retry */
+  public static long getRetryBaseDelay() {
+    return retryBaseDelay;
+  }
+
+  /** @param retryBaseDelay in milliseconds */
+  public static void setRetryBaseDelay(long retryBaseDelay) {
+    if (retryBaseDelay <= 0) {
+      throw new IllegalArgumentException("Retry base delay must be greater than 0");
+    }
+    Configuration.retryBaseDelay = retryBaseDelay;
+  }
+
+  /** @return retryMaxDelay in milliseconds, the longest wait before a retry */
+  public static long getRetryMaxDelay() {
+    return retryMaxDelay;
+  }
+
+  /** @param retryMaxDelay in milliseconds, also caps the wait requested by Retry-After */
+  public static void setRetryMaxDelay(long retryMaxDelay) {
+    if (retryMaxDelay <= 0) {
+      throw new IllegalArgumentException("Retry max delay must be greater than 0");
+    }
+    Configuration.retryMaxDelay = retryMaxDelay;
+  }
+
+  /** @return true when Metrics and Logs open their connections as soon as they are constructed */
+  public static boolean getPrewarmConnections() {
+    return prewarmConnections;
+  }
+
+  /**
+   * Enables the connection warm-up: constructing Metrics or Logs resolves the host and opens pooled
+   * connections in the background, ahead of the first flush.
+   *
+   * @param prewarmConnections
+   */
+  public static void setPrewarmConnections(boolean prewarmConnections) {
+    Configuration.prewarmConnections = prewarmConnections;
+  }
+
+  /** @return number of merged entries that flush the batching cache before the interval ends */
+  public static int getFlushThreshold() {
+    return flushThreshold;
+  }
+
+  /**
+   * Sets how many entries may be merged into the batching cache before it is flushed without
+   * waiting for the end of the interval.
+   *
+   * @param flushThreshold
+   */
+  public static void setFlushThreshold(int flushThreshold) {
+    if (flushThreshold <= 0) {
+      throw new IllegalArgumentException("Flush threshold must be greater than 0");
+    }
+    Configuration.flushThreshold = flushThreshold;
+  }
+
+  /**
+   * @return number of requests a batching Metrics or Logs instance holds before overflowing,
+   *     UNBOUNDED_BUFFER_CAPACITY unless set
+   */
+  public static int getBufferCapacity() {
+    return bufferCapacity;
+  }
+
+  /**
+   * Sets how many requests a batching Metrics or Logs instance holds, queued or merged, until they
+   * are sent. Requests added beyond it are handled by the OverflowPolicy, which drops the newest
+   * ones by default. The buffer is unbounded and nothing is dropped until a capacity is set.
+   *
+   * @param bufferCapacity
+   */
+  public static void setBufferCapacity(int bufferCapacity) {
+    if (bufferCapacity <= 0) {
+      throw new IllegalArgumentException("Buffer capacity must be greater than 0");
+    }
+    Configuration.bufferCapacity = bufferCapacity;
+  }
+
+  /** @return what happens to requests added while the buffer is full */
+  public static OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /** @param overflowPolicy */
+  public static void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    if (overflowPolicy == null) {
+      throw new IllegalArgumentException("Overflow policy must not be null");
+    }
+    Configuration.overflowPolicy = overflowPolicy;
+  }
+
+  /** @return overflowTimeout in milliseconds, how long OverflowPolicy.BLOCK waits for room */
+  public static long getOverflowTimeout() {
+    return overflowTimeout;
+  }
+
+  /** @param overflowTimeout in milliseconds */
+  public static void setOverflowTimeout(long overflowTimeout) {
+    if (overflowTimeout < 0) {
+      throw new IllegalArgumentException("Overflow timeout must not be negative");
+    }
+    Configuration.overflowTimeout = overflowTimeout;
+  }
+
+  /** @return number of worker threads shared by every Metrics and Logs instance */
+  public static int getWorkerThreads() {
+    return workerThreads;
+  }
+
+  /**
+   * Sets how many threads merge, flush and retry for all Metrics and Logs instances together.
+   *
+   * @param workerThreads
+   */
+  public static void setWorkerThreads(int workerThreads) {
+    if (workerThreads <= 0) {
+      throw new IllegalArgumentException("Worker threads must be greater than 0");
+    }
+    Configuration.workerThreads = workerThreads;
+    SdkRuntime.setWorkerThreads(workerThreads);
+  }
+
+  /** @return number of shards the cache of a batching Metrics instance is split into */
+  public static int getCacheShards() {
+    return cacheShards;
+  }
+
+  /**
+   * Splits the cache of batching Metrics instances created afterwards into shards by resource, each
+   * merged and flushed on its own so batching scales with the worker threads.
+   *
+   * @param cacheShards
+   */
+  public static void setCacheShards(int cacheShards) {
+    if (cacheShards <= 0) {
+      throw new IllegalArgumentException("Cache shards must be greater than 0");
+    }
+    Configuration.cacheShards = cacheShards;
+  }
+
+  /** @return true when batching Metrics and Logs tune their batch size and interval */
+  public static boolean getAdaptiveBatching() {
+    return adaptiveBatching;
+  }
+
+  /**
+   * Enables adaptive batching for Metrics and Logs instances created afterwards: batch size and
+   * flush interval follow the latency, failures and queue depth observed, see AdaptiveBatching.
+   *
+   * @param adaptiveBatching
+   */
+  public static void setAdaptiveBatching(boolean adaptiveBatching) {
+    Configuration.adaptiveBatching = adaptiveBatching;
+  }
+
+  /** @return targetLatency in milliseconds, slower requests shrink adaptive batches */
+  public static long getTargetLatency() {
+    return targetLatency;
+  }
+
+  /** @param targetLatency in milliseconds */
+  public static void setTargetLatency(long targetLatency) {
+    if (targetLatency <= 0) {
+      throw new IllegalArgumentException("Target latency must be greater than 0");
+    }
+    Configuration.targetLatency = targetLatency;
+  }
+
+  /** @return true when SDK tasks and async sends run on virtual threads where Java 21+ allows */
+  public static boolean getVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * On Java 21 and later, merges, flushes, retries and async sends run on virtual threads by
+   * default, the worker threads only keep time. Has no effect on older JVMs.
+   *
+   * @param virtualThreads
+   */
+  public static void setVirtualThreads(boolean virtualThreads) {
+    Configuration.virtualThreads = virtualThreads;
+  }
+
+  /** @return number of preallocated records per batching cache, 0 when the ring is off */
+  public static int getRingBufferSize() {
+    return ringBufferSize;
+  }
+
+  /**
+   * Gives batching Metrics and Logs instances created afterwards a ring buffer of ringBufferSize
+   * preallocated records, rounded up to a power of two. sendMetrics and sendLogs then fill a
+   * record instead of allocating a request, and metrics are validated when merged: invalid ones
+   * are logged and reported to the DropCallback instead of being thrown. 0 turns the ring off.
+   *
+   * @param ringBufferSize
+   */
+  public static void setRingBufferSize(int ringBufferSize) {
+    if (ringBufferSize < 0 || ringBufferSize > RingBuffer.MAX_SIZE) {
+      throw new IllegalArgumentException(
+          "Ring buffer size must be between 0 and " + RingBuffer.MAX_SIZE);
+    }
+    Configuration.ringBufferSize = ringBufferSize;
+  }
+
+  /** @return bytes of each off-heap stage of a batching cache, 0 when caches stay on the heap */
+  public static int getOffHeapStagingBytes() {
+    return offHeapStagingBytes;
+  }
+
+  /**
+   * Stages the values merged by batching Metrics and the logs merged by batching Logs instances
+   * created afterwards outside the Java heap, in direct buffers of offHeapStagingBytes bytes. A
+   * cache holds two of them, one filled while the other is sent, and flushes when the one being
+   * filled is full; while both are in use it caches on the heap. JSON is encoded from the stage at
+   * flush time. 0 keeps caches on the heap.
+   *
+   * @param offHeapStagingBytes
+   */
+  public static void setOffHeapStagingBytes(int offHeapStagingBytes) {
+    if (offHeapStagingBytes < 0) {
+      throw new IllegalArgumentException("Off-heap staging bytes must not be negative");
+    }
+    Configuration.offHeapStagingBytes = offHeapStagingBytes;
+  }
+
   /** @return requestPerMinute */
   public static int getRequestPerMinute() {
     return requestPerMinute;
@@ -257,4 +604,32 @@ public class Configuration {
   public static void setRequestPerMinute(int requestPerMinute) {
     Configuration.requestPerMinute = requestPerMinute;
   }
+
+  /** @return Transport used by Metrics and Logs instances without a Transport of their own */
+  public static Transport getTransport() {
+    Transport current = transport;
+    if (current == null) {
+      synchronized (Configuration.class) {
+        current = transport;
+        if (current == null) {
+          current = new OkHttpTransport();
+          transport = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Sets the Transport used to send requests, for example a JdkHttpTransport on Java 11+ or an
+   * InMemoryTransport in tests. Defaults to an OkHttpTransport on the shared connection pool.
+   *
+   * @param transport
+   */
+  public static void setTransport(Transport transport) {
+    if (transport == null) {
+      throw new IllegalArgumentException("Transport must not be null");
+    }
+    Configuration.transport = transport;
+  }
 }
@@ -11,4 +11,8 @@ public class Constant {
   public static final int DEFAULT_PUSHMETRICS_MAXIMUM_ARRAY_SIZE_FOR_SINGLE_LOG_MESSAGE = 32;
 
   public static final long DEFAULT_PUSHMETRICS_MAXIMUM_METRICS_PAYLOAD_SIZE_ON_COMPRESSION = 104858;
+
+  public static final int MINIMUM_ENTRIES_PER_PARALLEL_PAYLOAD = 16;
+
+  public static final long DEFAULT_CLOSE_TIMEOUT_SECONDS = 30;
 }
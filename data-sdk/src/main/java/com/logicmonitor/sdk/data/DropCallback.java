@@ -0,0 +1,21 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data;
+
+import com.logicmonitor.sdk.data.model.Input;
+
+/** Notified when Metrics or Logs drop a request because the buffer is full. */
+@FunctionalInterface
+public interface DropCallback {
+
+  /**
+   * @param input request that was dropped
+   * @param dropped number of requests dropped so far by the same Metrics or Logs instance
+   */
+  void onDrop(Input input, long dropped);
+}
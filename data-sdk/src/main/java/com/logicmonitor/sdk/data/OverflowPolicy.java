@@ -0,0 +1,32 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data;
+
+/**
+ * What Metrics and Logs do with a request added while Configuration.getBufferCapacity() requests
+ * are already waiting to be sent.
+ */
+public enum OverflowPolicy {
+  /**
+   * Waits up to Configuration.getOverflowTimeout() milliseconds for a flush to make room, then
+   * drops the request.
+   */
+  BLOCK,
+  /** Drops the request being added. */
+  DROP_NEWEST,
+  /**
+   * Drops the oldest request not yet merged to make room, the request being added is dropped when
+   * every waiting request is already merged.
+   */
+  DROP_OLDEST,
+  /**
+   * Once the buffer is half full requests are admitted with a probability falling linearly from 1
+   * to 0 as it fills up, so overload thins out the data instead of cutting it off.
+   */
+  SAMPLE
+}
@@ -7,16 +7,22 @@
  */
 package com.logicmonitor.sdk.data.api;
 
-import com.logicmonitor.sdk.data.ApiClientUserAgent;
 import com.logicmonitor.sdk.data.Configuration;
 import com.logicmonitor.sdk.data.Constant;
 import com.logicmonitor.sdk.data.internal.BatchingCache;
+import com.logicmonitor.sdk.data.internal.JsonSize;
+import com.logicmonitor.sdk.data.internal.OffHeapStage;
+import com.logicmonitor.sdk.data.internal.RingBuffer;
+import com.logicmonitor.sdk.data.model.Input;
 import com.logicmonitor.sdk.data.model.LogsInput;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.time.Instant;
 import java.util.*;
-import lombok.SneakyThrows;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
 import org.openapitools.client.*;
 
@@ -27,9 +33,26 @@ public class Logs extends BatchingCache {
   private static final String PATH = "/log/ingest";
 
   private static final String METHOD = "POST";
-  private final ApiClientUserAgent userAgent = new ApiClientUserAgent();
 
-  private ApiClient apiClient = new ApiClient();
+  /** Empty cache swapped in at the next flush, null while it is being sent. */
+  private final AtomicReference<List<LogsInput>> spareCache = new AtomicReference<>();
+
+  /** Preallocated records, null unless batching with Configuration.getRingBufferSize() set. */
+  private RingBuffer<LogsSlot> ring;
+
+  private final Consumer<LogsSlot> slotMerger = this::mergeSlot;
+
+  /** Size of the off-heap stages, 0 unless batching with Configuration.getOffHeapStagingBytes(). */
+  private int stagingBytes;
+
+  /** Stage the merged logs go into, null while staging is off or both stages are in use. */
+  private OffHeapStage stage;
+
+  /** Empty stage swapped in at the next flush, null while it is being sent. */
+  private final AtomicReference<OffHeapStage> spareStage = new AtomicReference<>();
+
+  /** Bytes of the cached logs encoded as one JSON array, the staged ones included. */
+  private long encodedBytes;
 
   public Logs() {
     this(Configuration.getConfiguration());
@@ -37,7 +60,9 @@ public class Logs extends BatchingCache {
 
   public Logs(final Configuration conf, final int interval, final boolean batch) {
     super(conf, interval, batch);
-    apiClient.setBasePath(Configuration.setCompany());
+
+    checkRing();
+    checkStage();
   }
 
   /**
@@ -49,13 +74,17 @@ public class Logs extends BatchingCache {
   public Logs(
       final Configuration conf, final int interval, final boolean batch, ApiCallback apiCallback) {
     super(conf, interval, batch, apiCallback);
-    apiClient.setBasePath(Configuration.setCompany());
+
+    checkRing();
+    checkStage();
   }
 
   /** @param conf This is configuration variable */
   public Logs(final Configuration conf) {
     super(conf);
-    apiClient.setBasePath(Configuration.setCompany());
+
+    checkRing();
+    checkStage();
   }
 
   /**
@@ -64,7 +93,9 @@ public class Logs extends BatchingCache {
    */
   public Logs(final Configuration conf, ApiCallback apiCallback) {
     super(conf, apiCallback);
-    apiClient.setBasePath(Configuration.setCompany());
+
+    checkRing();
+    checkStage();
   }
 
   /**
@@ -74,7 +105,26 @@ public class Logs extends BatchingCache {
    */
   protected static ApiResponse singleRequest(final LogsInput logsV1)
       throws ApiException, IOException {
+    return singleRequest(Unbatched.LOGS, logsV1);
+  }
 
+  /**
+   * @param logs instance whose Transport and ApiCallback are used
+   * @param logsV1 This logInput attribute
+   * @return
+   * @throws ApiException
+   */
+  private static ApiResponse singleRequest(final BatchingCache logs, final LogsInput logsV1)
+      throws ApiException, IOException {
+    return logs.makeRequest(
+        createSingleLogBody(logsV1), PATH, METHOD, true, false, Configuration.getgZip());
+  }
+
+  /**
+   * @param logsV1 This logInput attribute
+   * @return body holding the single log
+   */
+  private static List<Map<String, Object>> createSingleLogBody(final LogsInput logsV1) {
     final DecimalFormat df = new DecimalFormat("0.00");
     final List<Map<String, Object>> logBody = new ArrayList<>();
     final Map<String, Object> body = new HashMap<>();
@@ -96,44 +146,211 @@ public class Logs extends BatchingCache {
     if (msg_size > Constant.DEFAULT_PUSHMETRICS_MAXIMUM_ARRAY_SIZE_FOR_SINGLE_LOG_MESSAGE) {
       log.warn("Your message exceeds 32KB It will be truncate");
     }
-    final BatchingCache b = new Logs();
-    return b.makeRequest(logBody, PATH, METHOD, true, false, Configuration.getgZip());
+    return logBody;
   }
 
   /** Return void */
   @Override
   protected void mergeRequest() {
     final LogsInput singleRequest = (LogsInput) getRequest().remove();
-    int singleRequestSize = singleRequest.toString().getBytes().length;
-    int payloadCacheSize = payloadCache.toString().getBytes().length;
-    double limit = singleRequestSize + payloadCacheSize;
-    if (limit <= Constant.DEFAULT_PUSHMETRICS_LOG_MAXIMUM_CONTENT_SIZE_PER_PAYLOAD) {
-      logPayloadCache.add(singleRequest);
-    } else {
+    final long size = encodedSize(singleRequest);
+    if (!fits(size) || !cache(singleRequest, size)) {
       getRequest().add(singleRequest);
-      doRequest();
+      flushCache();
+    }
+  }
+
+  /**
+   * Merges a log emitted through the ring buffer, flushing the cache first when it does not fit.
+   *
+   * @param slot
+   */
+  private void mergeSlot(final LogsSlot slot) {
+    final LogsInput singleRequest = slot.take();
+    final long size = encodedSize(singleRequest);
+    if (!fits(size) || !cache(singleRequest, size)) {
+      flushCache();
+      cache(singleRequest, size);
+    }
+  }
+
+  /**
+   * Puts the log into the stage when there is one, otherwise into the list of the cache.
+   *
+   * @param singleRequest
+   * @param size bytes of the log encoded
+   * @return false when the stage is full, flushing the cache makes room
+   */
+  private boolean cache(final LogsInput singleRequest, final long size) {
+    // the brackets of the array come with the first log, a comma with every other
+    final long added = size + (isCacheEmpty() ? 2 : 1);
+    if (stage != null
+        && !stage.putLog(
+            singleRequest.getMessage(),
+            singleRequest.getLogLevel(),
+            singleRequest.getResourceId(),
+            singleRequest.getTimeStamp(),
+            singleRequest.getMetadata())) {
+      if (stage.getRecords() > 0) {
+        return false;
+      }
+      // larger than the whole stage
+      logPayloadCache.add(singleRequest);
+    } else if (stage == null) {
+      logPayloadCache.add(singleRequest);
+    }
+    encodedBytes += added;
+    return true;
+  }
+
+  @Override
+  protected int mergeSlots() {
+    return ring == null ? 0 : ring.drain(slotMerger);
+  }
+
+  /**
+   * @param size bytes of the log encoded
+   * @return true when the log fits into the payload limit together with the cache, or the cache is
+   *     empty
+   */
+  private boolean fits(final long size) {
+    // an empty cache takes any request, flushing it would not make room
+    return isCacheEmpty()
+        || encodedBytes + 1 + size
+            <= payloadLimit(Constant.DEFAULT_PUSHMETRICS_LOG_MAXIMUM_CONTENT_SIZE_PER_PAYLOAD);
+  }
+
+  /**
+   * @param log
+   * @return bytes of the log encoded as createBody writes it
+   */
+  private static long encodedSize(final LogsInput log) {
+    final Map<String, String> metadata =
+        log.getMetadata() == null ? Collections.emptyMap() : log.getMetadata();
+    long size = 0;
+    int members = 0;
+    // createBody puts the metadata after the fields, replacing those of the same name
+    if (log.getMessage() != null && !metadata.containsKey("message")) {
+      size += JsonSize.member("message", log.getMessage());
+      members++;
+    }
+    if (log.getResourceId() != null && !metadata.containsKey("_lm.resourceId")) {
+      size += JsonSize.string("_lm.resourceId") + 1 + JsonSize.map(log.getResourceId());
+      members++;
+    }
+    if (log.getTimeStamp() != null && !metadata.containsKey("timestamp")) {
+      size += JsonSize.member("timestamp", log.getTimeStamp());
+      members++;
+    }
+    if (log.getLogLevel() != null && !metadata.containsKey("log_level")) {
+      size += JsonSize.member("log_level", log.getLogLevel());
+      members++;
+    }
+    for (final Map.Entry<String, String> entry : metadata.entrySet()) {
+      if (entry.getValue() != null) {
+        size += JsonSize.member(entry.getKey(), entry.getValue());
+        members++;
+      }
+    }
+    return size + 2 + Math.max(0, members - 1);
+  }
+
+  /** @return bytes of the cached logs encoded as one JSON array */
+  long getEncodedBytes() {
+    return encodedBytes;
+  }
+
+  /** @return true when no log is cached, in the list or the stage */
+  private boolean isCacheEmpty() {
+    return logPayloadCache.isEmpty() && (stage == null || stage.getRecords() == 0);
+  }
+
+  /** Allocates the off-heap stages of Configuration.getOffHeapStagingBytes() while batching. */
+  private void checkStage() {
+    final int bytes = Configuration.getOffHeapStagingBytes();
+    if (batch && bytes > 0) {
+      stagingBytes = bytes;
+      stage = new OffHeapStage(bytes);
+      spareStage.set(new OffHeapStage(bytes));
+    }
+  }
+
+  /** Preallocates Configuration.getRingBufferSize() records while batching. */
+  private void checkRing() {
+    final int size = Configuration.getRingBufferSize();
+    if (batch && size > 0) {
+      ring = new RingBuffer<>(size, LogsSlot::new);
     }
   }
 
   /** Return void */
-  @SneakyThrows
   @Override
   protected void doRequest() {
-    final List<ApiResponse<String>> responseList = new ArrayList<>();
-    List<Map<String, Object>> list = createBody();
-    ApiResponse<String> response;
-
-    try {
-      if (null != list && list.size() > 0) {
-        response = makeRequest(list, PATH, METHOD, true, false, Configuration.getgZip());
-        responseList.add(response);
-        responseHandler(response);
-      }
-    } catch (ApiException e) {
-      if (apiCallback != null) {
-        apiCallback.onFailure(e, e.getCode(), e.getResponseHeaders());
+    sendBody(createBody());
+  }
+
+  /**
+   * Swaps the full cache for the spare one, the full one is sent without holding the cache lock and
+   * becomes the spare once it is sent and emptied.
+   *
+   * @return send of the full cache
+   */
+  @Override
+  protected Supplier<CompletableFuture<Void>> detachCache() {
+    final List<LogsInput> full = logPayloadCache;
+    if (isCacheEmpty()) {
+      return () -> CompletableFuture.completedFuture(null);
+    }
+    final List<LogsInput> spare = spareCache.getAndSet(null);
+    logPayloadCache = spare != null ? spare : new ArrayList<>();
+    encodedBytes = 0;
+    final OffHeapStage fullStage = stage;
+    if (stagingBytes > 0) {
+      // null while the spare is still being sent, the cache is then kept on the heap
+      stage = spareStage.getAndSet(null);
+    }
+    return () -> {
+      try {
+        return sendBody(createBody(unstage(fullStage, full)));
+      } finally {
+        full.clear();
+        spareCache.set(full);
+        if (fullStage != null) {
+          fullStage.clear();
+          // at most two stages are ever allocated
+          spareStage.compareAndSet(null, fullStage);
+        }
       }
+    };
+  }
+
+  /**
+   * @param staged stage of the cache, may be null
+   * @param cached logs in the list of the cache
+   * @return the staged logs, read back from the stage, followed by the listed ones
+   */
+  private static List<LogsInput> unstage(final OffHeapStage staged, final List<LogsInput> cached) {
+    if (staged == null || staged.getRecords() == 0) {
+      return cached;
     }
+    final List<LogsInput> logs = new ArrayList<>(staged.getRecords() + cached.size());
+    staged.forEachLog(logs::add);
+    logs.addAll(cached);
+    return logs;
+  }
+
+  /**
+   * Sends the logs of a flush like Metrics sends its payloads, with retries waiting on a scheduler
+   * thread rather than in the flushing one. Only direct synchronous requests block on retries.
+   *
+   * @param list body of the request
+   * @return CompletableFuture completed once the logs are handled
+   */
+  private CompletableFuture<Void> sendBody(final List<Map<String, Object>> list) {
+    if (null != list && list.size() > 0) {
+      return sendPayloads(Collections.singletonList(new Payload(list, PATH, METHOD, true)));
+    }
+    return CompletableFuture.completedFuture(null);
   }
 
   /**
@@ -152,7 +369,18 @@ public class Logs extends BatchingCache {
       long timeStamp)
       throws IOException, ApiException {
     if (timeStamp == 0L) {
-      timeStamp = Instant.now().toEpochMilli();
+      timeStamp = System.currentTimeMillis();
+    }
+    if (ring != null) {
+      final long sequence = claim(ring);
+      if (sequence < 0) {
+        dropped(null);
+      } else {
+        ring.get(sequence).set(message, logLevel, resourceId, metadata, timeStamp);
+        ring.publish(sequence);
+        getScheduler().onArrival();
+      }
+      return null;
     }
     final LogsInput logsV1 =
         new LogsInput(message, logLevel, resourceId, Long.toString(timeStamp), metadata);
@@ -161,14 +389,66 @@ public class Logs extends BatchingCache {
       addRequest(logsV1);
       return null;
     }
-    return Optional.ofNullable(singleRequest(logsV1));
+    return Optional.ofNullable(singleRequest(this, logsV1));
+  }
+
+  /**
+   * Sends the log immediately without blocking the calling thread, whether or not batching is
+   * enabled. The number of requests in flight is limited by
+   * Configuration.getMaxInFlightRequests().
+   *
+   * @param message
+   * @param logLevel
+   * @param resourceId
+   * @param metadata
+   * @param timeStamp epoch milliseconds, 0 for now
+   * @return CompletableFuture completed with the ApiResponse, or exceptionally with an
+   *     ApiException
+   */
+  public CompletableFuture<ApiResponse<String>> sendLogsAsync(
+      final String message,
+      final String logLevel,
+      final Map<String, String> resourceId,
+      final Map<String, String> metadata,
+      long timeStamp) {
+    if (timeStamp == 0L) {
+      timeStamp = Instant.now().toEpochMilli();
+    }
+    return sendAsync(
+        new LogsInput(message, logLevel, resourceId, Long.toString(timeStamp), metadata));
+  }
+
+  /**
+   * Creates a Reactive Streams Subscriber sending every LogsInput it receives like sendLogs. It
+   * requests as many logs as the free buffer capacity and in-flight budget admit, so a publisher is
+   * slowed down instead of filling the buffer. On Java 9 and later it subscribes to a
+   * java.util.concurrent.Flow.Publisher through org.reactivestreams.FlowAdapters.toFlowSubscriber.
+   *
+   * @return ReactiveSubscriber for one publisher
+   */
+  public ReactiveSubscriber<LogsInput> subscriber() {
+    return new ReactiveSubscriber<>(this);
+  }
+
+  @Override
+  protected CompletableFuture<ApiResponse<String>> sendAsync(final Input input) {
+    return makeRequestAsync(
+        createSingleLogBody((LogsInput) input), PATH, METHOD, true, Configuration.getgZip());
   }
 
   /** @return List<Map < String, Object>> */
   private List<Map<String, Object>> createBody() {
+    return createBody(logPayloadCache);
+  }
+
+  /**
+   * @param logs cached logs, emptied once converted
+   * @return body holding the logs
+   */
+  private List<Map<String, Object>> createBody(final List<LogsInput> logs) {
     final DecimalFormat df = new DecimalFormat("0.00");
     final List<Map<String, Object>> logBody = new ArrayList<>();
-    for (final LogsInput logsV1 : logPayloadCache) {
+    for (final LogsInput logsV1 : logs) {
       final Map<String, Object> body = new HashMap<>();
       body.put("message", logsV1.getMessage());
       body.put("_lm.resourceId", logsV1.getResourceId());
@@ -189,12 +469,12 @@ public class Logs extends BatchingCache {
         log.warn("Your message exceeds 32KB It will be truncate");
       }
     }
-    logPayloadCache.clear();
+    logs.clear();
     return logBody;
   }
 
-  /** @param client */
-  public void setApiClient(ApiClient client) {
-    this.apiClient = client;
+  /** Instance sending single logs for callers without one, created once and never batching. */
+  private static final class Unbatched {
+    private static final Logs LOGS = new Logs(Configuration.getConfiguration(), 0, false);
   }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.api;
+
+import com.logicmonitor.sdk.data.model.LogsInput;
+import java.util.Map;
+
+/**
+ * This Class is a reusable record of the Logs ring buffer. It keeps the arguments of sendLogs,
+ * with the timestamp as a long, until the log is merged into the cache as a LogsInput.
+ */
+final class LogsSlot {
+
+  private String message;
+  private String logLevel;
+  private Map<String, String> resourceId;
+  private Map<String, String> metadata;
+  private long timeStamp;
+
+  void set(
+      final String message,
+      final String logLevel,
+      final Map<String, String> resourceId,
+      final Map<String, String> metadata,
+      final long timeStamp) {
+    this.message = message;
+    this.logLevel = logLevel;
+    this.resourceId = resourceId;
+    this.metadata = metadata;
+    this.timeStamp = timeStamp;
+  }
+
+  /** @return the log as held by the cache, the slot is cleared */
+  LogsInput take() {
+    final LogsInput input =
+        new LogsInput(message, logLevel, resourceId, Long.toString(timeStamp), metadata);
+    message = null;
+    logLevel = null;
+    resourceId = null;
+    metadata = null;
+    return input;
+  }
+}
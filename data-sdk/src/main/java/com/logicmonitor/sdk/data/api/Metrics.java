@@ -7,28 +7,32 @@
  */
 package com.logicmonitor.sdk.data.api;
 
-import com.logicmonitor.sdk.data.ApiClientUserAgent;
 import com.logicmonitor.sdk.data.Configuration;
 import com.logicmonitor.sdk.data.Constant;
 import com.logicmonitor.sdk.data.internal.BatchingCache;
+import com.logicmonitor.sdk.data.internal.Canonicals;
+import com.logicmonitor.sdk.data.internal.JsonSize;
+import com.logicmonitor.sdk.data.internal.OffHeapStage;
+import com.logicmonitor.sdk.data.internal.RingBuffer;
+import com.logicmonitor.sdk.data.internal.SampleColumns;
 import com.logicmonitor.sdk.data.model.*;
+import com.logicmonitor.sdk.data.transport.Transport;
 import com.logicmonitor.sdk.data.validator.DataSourceInstanceValidator;
 import com.logicmonitor.sdk.data.validator.DataSourceValidator;
 import com.logicmonitor.sdk.data.validator.ResourceValidator;
 import com.logicmonitor.sdk.data.validator.Validator;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.openapitools.client.ApiCallback;
-import org.openapitools.client.ApiClient;
 import org.openapitools.client.ApiException;
 import org.openapitools.client.ApiResponse;
-import org.openapitools.client.api.LmMetricIngestApi;
 import org.openapitools.client.model.RestDataPointV1;
 import org.openapitools.client.model.RestDataSourceInstanceV1;
 import org.openapitools.client.model.RestMetricsV1;
@@ -40,9 +44,12 @@ public class Metrics extends BatchingCache {
   private static final String PATH = "/v2/metric/ingest";
 
   private static final String METHOD = "POST";
-  private final ApiClientUserAgent userAgent = new ApiClientUserAgent();
 
-  private ApiClient apiClient = new ApiClient();
+  /** Samples buffered for record unless Configuration.getRingBufferSize() is set. */
+  private static final int DEFAULT_SAMPLE_RING_SIZE = 8192;
+
+  /** Canonical copies kept across flushes, beyond it they are rebuilt from the next batch. */
+  private static final int MAX_CANONICALS = 10000;
 
   private Validator validator = new Validator();
 
@@ -53,6 +60,59 @@ public class Metrics extends BatchingCache {
   private DataSourceInstanceValidator dataSourceInstanceValidator =
       new DataSourceInstanceValidator();
 
+  /** Empty cache swapped in at the next flush, null while it is being sent. */
+  private final AtomicReference<
+          HashMap<
+              Resource,
+              Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>>>>
+      spareCache = new AtomicReference<>();
+
+  /** Shards of the cache, null unless batching with Configuration.getCacheShards() above 1. */
+  private Metrics[] cacheShards;
+
+  /** Preallocated records, null unless batching with Configuration.getRingBufferSize() set. */
+  private RingBuffer<MetricsSlot> ring;
+
+  private final Consumer<MetricsSlot> slotMerger = this::mergeSlot;
+
+  /** Keys of the cache, so equal descriptors share one entry. Created on first merge. */
+  private Canonicals canonicals;
+
+  /** Series registered with register. */
+  private final SeriesRegistry registry = new SeriesRegistry();
+
+  /** Samples passed to record, created by the first register routed to this cache. */
+  private volatile RingBuffer<SampleSlot> samples;
+
+  private final Consumer<SampleSlot> sampleMerger = this::mergeSample;
+
+  /** Size of the off-heap stages, 0 unless batching with Configuration.getOffHeapStagingBytes(). */
+  private int stagingBytes;
+
+  /** Stage the merged values go into, null while staging is off or both stages are in use. */
+  private OffHeapStage stage;
+
+  /** Empty stage swapped in at the next flush, null while it is being sent. */
+  private final AtomicReference<OffHeapStage> spareStage = new AtomicReference<>();
+
+  /** Columns of the cache with values in the stage, by their stage index. */
+  private List<SampleColumns> stagedColumns = new ArrayList<>();
+
+  /**
+   * Bytes of the cache encoded as one JSON array, the staged values included. Each payload sent
+   * holds a part of it.
+   */
+  private long encodedBytes;
+
+  /** Bytes of the staged values within encodedBytes. */
+  private long stagedBytes;
+
+  /** Compressed bytes per encoded byte of the cache, 0 until measured for this batch. */
+  private double compressionRatio;
+
+  /** encodedBytes when compressionRatio was measured. */
+  private long measuredBytes;
+
   public Metrics() {
     this(Configuration.getConfiguration());
   }
@@ -64,7 +124,9 @@ public class Metrics extends BatchingCache {
    */
   public Metrics(final Configuration conf, final int interval, final boolean batch) {
     super(conf, interval, batch);
-    apiClient.setBasePath(conf.setCompany());
+    checkShards();
+    checkRing();
+    checkStage();
   }
 
   /**
@@ -76,7 +138,9 @@ public class Metrics extends BatchingCache {
   public Metrics(
       final Configuration conf, final int interval, final boolean batch, ApiCallback apiCallback) {
     super(conf, interval, batch, apiCallback);
-    apiClient.setBasePath(conf.setCompany());
+    checkShards();
+    checkRing();
+    checkStage();
   }
 
   /**
@@ -85,13 +149,118 @@ public class Metrics extends BatchingCache {
    */
   public Metrics(final Configuration conf, ApiCallback apiCallback) {
     super(conf, apiCallback);
-    apiClient.setBasePath(conf.setCompany());
+    checkShards();
+    checkRing();
+    checkStage();
   }
 
   /** @param conf This is configuration variable */
   public Metrics(final Configuration conf) {
     super(conf);
-    apiClient.setBasePath(conf.setCompany());
+    checkShards();
+    checkRing();
+    checkStage();
+  }
+
+  /**
+   * Creates a shard of owner, with a queue, cache, lock and flush trigger of its own.
+   *
+   * @param owner
+   */
+  private Metrics(final Metrics owner) {
+    super(owner);
+    checkRing();
+    checkStage();
+  }
+
+  /** Splits the cache into Configuration.getCacheShards() shards while batching. */
+  private void checkShards() {
+    final int count = Configuration.getCacheShards();
+    if (!batch || count <= 1) {
+      return;
+    }
+    final Metrics[] shards = new Metrics[count];
+    for (int i = 0; i < count; i++) {
+      shards[i] = new Metrics(this);
+    }
+    cacheShards = shards;
+  }
+
+  /** Preallocates Configuration.getRingBufferSize() records, in each shard when sharded. */
+  private void checkRing() {
+    final int size = Configuration.getRingBufferSize();
+    if (batch && cacheShards == null && size > 0) {
+      ring = new RingBuffer<>(size, MetricsSlot::new);
+    }
+  }
+
+  /** Allocates the off-heap stages of Configuration.getOffHeapStagingBytes(), in each shard. */
+  private void checkStage() {
+    final int bytes = Configuration.getOffHeapStagingBytes();
+    if (batch && cacheShards == null && bytes > 0) {
+      stagingBytes = bytes;
+      stage = new OffHeapStage(bytes);
+      spareStage.set(new OffHeapStage(bytes));
+    }
+  }
+
+  /**
+   * All metrics of a resource go to the same shard, chosen by the hash of its resource ids.
+   *
+   * @param body
+   * @return shard merging the request
+   */
+  @Override
+  protected BatchingCache route(final Input body) {
+    return route(((MetricsInput) body).getResource());
+  }
+
+  /**
+   * @param resource
+   * @return shard merging the metrics of the resource
+   */
+  private Metrics route(final Resource resource) {
+    final Metrics[] shards = cacheShards;
+    if (shards == null) {
+      return this;
+    }
+    int hash = resource == null ? 0 : Objects.hashCode(resource.getIds());
+    hash ^= hash >>> 16;
+    return shards[Math.floorMod(hash, shards.length)];
+  }
+
+  @Override
+  protected List<? extends BatchingCache> shards() {
+    return cacheShards == null ? super.shards() : Arrays.asList(cacheShards);
+  }
+
+  /** @param apiCallback also used by the shards */
+  @Override
+  public void setApiCallback(final ApiCallback apiCallback) {
+    super.setApiCallback(apiCallback);
+    updateShards();
+  }
+
+  /** @param transport also used by the shards */
+  @Override
+  public void setTransport(final Transport transport) {
+    super.setTransport(transport);
+    updateShards();
+  }
+
+  /** @param intervalMillis also used by the shards */
+  @Override
+  public void setIntervalMillis(final long intervalMillis) {
+    super.setIntervalMillis(intervalMillis);
+    updateShards();
+  }
+
+  private void updateShards() {
+    if (cacheShards != null) {
+      for (final Metrics shard : cacheShards) {
+        shard.inheritFrom(this);
+      }
+    }
   }
 
   /**
@@ -100,8 +269,21 @@ public class Metrics extends BatchingCache {
    * @throws ApiException Throws ApiException
    */
   protected ApiResponse<String> singleRequest(MetricsInput input) throws ApiException, IOException {
+    return makeRequest(
+        createRestMetricsList(input),
+        PATH,
+        METHOD,
+        input.getResource().isCreate(),
+        Configuration.getAsyncRequest(),
+        Configuration.getgZip());
+  }
+
+  /**
+   * @param input Metrics Input Variable
+   * @return body holding the single metrics input
+   */
+  private static List<RestMetricsV1> createRestMetricsList(MetricsInput input) {
     List<RestMetricsV1> listOfRestMetricsV1 = new ArrayList<>();
-    BatchingCache batchingCache = new Metrics();
     List<RestDataPointV1> dataPoints = new ArrayList<>();
 
     RestDataPointV1 restDataPoint =
@@ -138,14 +320,7 @@ public class Metrics extends BatchingCache {
             .instances(instances);
 
     listOfRestMetricsV1.add(restMetrics);
-
-    return batchingCache.makeRequest(
-        listOfRestMetricsV1,
-        PATH,
-        METHOD,
-        input.getResource().isCreate(),
-        Configuration.getAsyncRequest(),
-        Configuration.getgZip());
+    return listOfRestMetricsV1;
   }
 
   /**
@@ -165,13 +340,175 @@ public class Metrics extends BatchingCache {
       final DataPoint dataPoint,
       final Map<String, String> values)
       throws ApiException, IOException {
-    final String errorMsg =
-        validator.validateAttributes(resource, dataSource, dataSourceInstance, dataPoint);
-    if (errorMsg != null && errorMsg.length() > 0) {
-      throw new IllegalArgumentException(errorMsg);
+    if (batch) {
+      final Metrics target = route(resource);
+      if (target.ring != null) {
+        target.emit(resource, dataSource, dataSourceInstance, dataPoint, values);
+        return null;
+      }
+    }
+    final MetricsInput input =
+        createMetricsInput(resource, dataSource, dataSourceInstance, dataPoint, values);
+    if (batch) {
+      addRequest(input);
+      return null;
+    } else {
+      return Optional.ofNullable(singleRequest(input));
+    }
+  }
+
+  /**
+   * Claims a record of the ring buffer, fills it and publishes it, without allocating. When the
+   * ring is full, OverflowPolicy.BLOCK waits for a record to be merged and every other policy drops
+   * the metrics.
+   */
+  private void emit(
+      final Resource resource,
+      final DataSource dataSource,
+      final DataSourceInstance dataSourceInstance,
+      final DataPoint dataPoint,
+      final Map<String, String> values) {
+    final long sequence = claim(ring);
+    if (sequence < 0) {
+      dropped(null);
+      return;
     }
-    final LmMetricIngestApi metricApi = new LmMetricIngestApi(apiClient);
-    metricApi.setCustomBaseUrl(apiClient.getBasePath());
+    ring.get(sequence).set(resource, dataSource, dataSourceInstance, dataPoint, values);
+    ring.publish(sequence);
+    getScheduler().onArrival();
+  }
+
+  /**
+   * Registers a series for record. The descriptors are validated once and frozen, later changes to
+   * them do not affect the series. Registering equal descriptors again returns the same handle.
+   *
+   * @param resource This is variable for Resource properties.
+   * @param dataSource This is variable for dataSource properties.
+   * @param dataSourceInstance This is variable for dataSourceInstance properties.
+   * @param dataPoint This is variable for dataPoint properties.
+   * @return handle of the series, valid for this Metrics only
+   */
+  public long register(
+      final Resource resource,
+      final DataSource dataSource,
+      final DataSourceInstance dataSourceInstance,
+      final DataPoint dataPoint) {
+    validate(resource, dataSource, dataSourceInstance, dataPoint);
+    final MetricsSeries series =
+        registry.register(resource, dataSource, dataSourceInstance, dataPoint, this::route);
+    if (batch) {
+      series.target.openSamples();
+    }
+    return series.handle;
+  }
+
+  /**
+   * Records one value of a series registered with register. While batching this writes the sample
+   * into a preallocated record without validating or allocating, it is merged into the cache like
+   * sendMetrics values. Otherwise the sample is sent right away.
+   *
+   * @param handle returned by register
+   * @param epochSeconds time of the value
+   * @param value value of the data point
+   * @throws ApiException
+   * @throws IOException
+   */
+  public void record(final long handle, final long epochSeconds, final double value)
+      throws ApiException, IOException {
+    final MetricsSeries series = registry.get(handle);
+    if (!batch) {
+      final MetricsInput input = series.input();
+      input.getValues().put(Long.toString(epochSeconds), SampleColumns.format(value));
+      singleRequest(input);
+      return;
+    }
+    final Metrics target = series.target;
+    final RingBuffer<SampleSlot> ring = target.samples;
+    final long sequence = target.claim(ring);
+    if (sequence < 0) {
+      target.dropped(null);
+      return;
+    }
+    final SampleSlot slot = ring.get(sequence);
+    slot.series = series;
+    slot.epochSeconds = epochSeconds;
+    slot.value = value;
+    ring.publish(sequence);
+    target.getScheduler().onArrival();
+  }
+
+  /** Creates the ring buffer of the samples passed to record, once. */
+  private synchronized void openSamples() {
+    if (samples == null) {
+      final int size = Configuration.getRingBufferSize();
+      samples = new RingBuffer<>(size > 0 ? size : DEFAULT_SAMPLE_RING_SIZE, SampleSlot::new);
+    }
+  }
+
+  /**
+   * Sends the metrics immediately without blocking the calling thread, whether or not batching is
+   * enabled. The number of requests in flight is limited by
+   * Configuration.getMaxInFlightRequests().
+   *
+   * @param resource This is variable for Resource properties.
+   * @param dataSource This is variable for dataSource properties.
+   * @param dataSourceInstance This is variable for dataSourceInstance properties.
+   * @param dataPoint This is variable for dataPoint properties.
+   * @param values This is variable for values properties.
+   * @return CompletableFuture completed with the ApiResponse, or exceptionally with an
+   *     ApiException
+   */
+  public CompletableFuture<ApiResponse<String>> sendMetricsAsync(
+      final Resource resource,
+      final DataSource dataSource,
+      final DataSourceInstance dataSourceInstance,
+      final DataPoint dataPoint,
+      final Map<String, String> values) {
+    return sendAsync(
+        createMetricsInput(resource, dataSource, dataSourceInstance, dataPoint, values));
+  }
+
+  /**
+   * Creates a Reactive Streams Subscriber sending every MetricsInput it receives like sendMetrics.
+   * It requests as many inputs as the free buffer capacity and in-flight budget admit, so a
+   * publisher is slowed down instead of filling the buffer. On Java 9 and later it subscribes to a
+   * java.util.concurrent.Flow.Publisher through org.reactivestreams.FlowAdapters.toFlowSubscriber.
+   *
+   * @return ReactiveSubscriber for one publisher
+   */
+  public ReactiveSubscriber<MetricsInput> subscriber() {
+    return new ReactiveSubscriber<>(this);
+  }
+
+  @Override
+  protected CompletableFuture<?> submit(final Input input) {
+    final MetricsInput metricsInput = (MetricsInput) input;
+    validate(
+        metricsInput.getResource(),
+        metricsInput.getDataSource(),
+        metricsInput.getDataSourceInstance(),
+        metricsInput.getDataPoint());
+    return super.submit(input);
+  }
+
+  @Override
+  protected CompletableFuture<ApiResponse<String>> sendAsync(final Input input) {
+    final MetricsInput metricsInput = (MetricsInput) input;
+    return makeRequestAsync(
+        createRestMetricsList(metricsInput),
+        PATH,
+        METHOD,
+        metricsInput.getResource().isCreate(),
+        Configuration.getgZip());
+  }
+
+  private MetricsInput createMetricsInput(
+      final Resource resource,
+      final DataSource dataSource,
+      final DataSourceInstance dataSourceInstance,
+      final DataPoint dataPoint,
+      final Map<String, String> values) {
+    validate(resource, dataSource, dataSourceInstance, dataPoint);
     final MetricsInput input = new MetricsInput();
     input.setResource(resource);
     input.setDataSource(dataSource);
@@ -181,19 +518,30 @@ public class Metrics extends BatchingCache {
     for (final Entry<String, String> item : values.entrySet()) {
       input.getValues().put(item.getKey(), item.getValue());
     }
-    if (batch) {
-      addRequest(input);
-      return null;
-    } else {
-      return Optional.ofNullable(singleRequest(input));
+    return input;
+  }
+
+  private void validate(
+      final Resource resource,
+      final DataSource dataSource,
+      final DataSourceInstance dataSourceInstance,
+      final DataPoint dataPoint) {
+    final String errorMsg =
+        validator.validateAttributes(resource, dataSource, dataSourceInstance, dataPoint);
+    if (errorMsg != null && errorMsg.length() > 0) {
+      throw new IllegalArgumentException(errorMsg);
     }
   }
 
   /**
+   * Converts the cache into one RestMetricsV1 entry per resource and datasource and sends them.
+   * Entries are grouped by their create flag and each group is split into independent payloads
+   * which are sent concurrently, see BatchingCache.sendPayloads.
+   *
    * @param body Nested MAP as a body
-   * @return
+   * @return CompletableFuture completed once every payload is handled
    */
-  protected void createRestMetricsBody(
+  protected CompletableFuture<Void> createRestMetricsBody(
       final Map<
               Resource,
               Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>>>
@@ -202,175 +550,421 @@ public class Metrics extends BatchingCache {
 
     final List<RestMetricsV1> listOfRestMetricsV1CreateTrue = new ArrayList<>();
     final List<RestMetricsV1> listOfRestMetricsV1CreateFalse = new ArrayList<>();
-    final List<RestDataPointV1> dataPoints = new ArrayList<>();
-    ApiResponse<String> response = null;
+    final List<Resource> sentResources = new ArrayList<>(body.keySet());
+    toRestMetrics(body, listOfRestMetricsV1CreateTrue, listOfRestMetricsV1CreateFalse);
+
+    final List<Payload> payloads = new ArrayList<>();
+    for (final List<RestMetricsV1> part : partition(listOfRestMetricsV1CreateTrue)) {
+      payloads.add(new Payload(part, PATH, METHOD, true));
+    }
+    for (final List<RestMetricsV1> part : partition(listOfRestMetricsV1CreateFalse)) {
+      payloads.add(new Payload(part, PATH, METHOD, false));
+    }
+    final CompletableFuture<Void> sent = sendPayloads(payloads);
+
+    for (final Resource resource : sentResources) {
+      body.remove(resource);
+    }
+    return sent;
+  }
 
-    Resource removeElement = null;
-    RestMetricsV1 restMetrics = new RestMetricsV1();
+  /**
+   * @param body Nested MAP as a body
+   * @param createTrue gets the entries of resources to be created
+   * @param createFalse gets the other entries
+   */
+  private static void toRestMetrics(
+      final Map<
+              Resource,
+              Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>>>
+          body,
+      final List<RestMetricsV1> createTrue,
+      final List<RestMetricsV1> createFalse) {
     for (final Entry<
             Resource, Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>>>
         item : body.entrySet()) {
       final Resource resource = item.getKey();
-      removeElement = resource;
-      DataSource dataSource = new DataSource();
-      final List<RestDataSourceInstanceV1> instances = new ArrayList<>();
 
       for (final Entry<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>>
           ds : item.getValue().entrySet()) {
-        dataSource = ds.getKey();
+        final List<RestDataSourceInstanceV1> instances = new ArrayList<>();
 
         for (final Entry<DataSourceInstance, Map<DataPoint, Map<String, String>>> ins :
             ds.getValue().entrySet()) {
-          final DataSourceInstance dataSourceInstance = ins.getKey();
+          final List<RestDataPointV1> dataPoints = new ArrayList<>();
 
           for (final Entry<DataPoint, Map<String, String>> dp : ins.getValue().entrySet()) {
-            final DataPoint dataPoint = dp.getKey();
-            final Map<String, String> valuePairs = new HashMap<>();
-            for (final Entry<String, String> value : dp.getValue().entrySet()) {
-              valuePairs.put(value.getKey(), value.getValue());
-            }
-
-            final RestDataPointV1 restDataPoint =
-                new RestDataPointV1()
-                    .dataPointAggregationType(dataPoint.getAggregationType())
-                    .dataPointDescription(dataPoint.getDescription())
-                    .dataPointName(dataPoint.getName())
-                    .dataPointType(dataPoint.getType())
-                    .values(valuePairs)
-                    .percentileValue(dataPoint.getPercentileValue());
-            dataPoints.add(restDataPoint);
+            // written as Strings when the payload is encoded, the cache is not merged into again
+            dataPoints.add(restDataPoint(dp.getKey(), dp.getValue()));
           }
+          instances.add(restInstance(ins.getKey(), dataPoints));
+        }
 
-          final RestDataSourceInstanceV1 restInstance =
-              new RestDataSourceInstanceV1()
-                  .dataPoints(dataPoints)
-                  .instanceDescription(dataSourceInstance.getDescription())
-                  .instanceDisplayName(dataSourceInstance.getDisplayName())
-                  .instanceName(dataSourceInstance.getName())
-                  .instanceProperties(dataSourceInstance.getProperties());
-          instances.add(restInstance);
+        final RestMetricsV1 restMetrics = restMetrics(resource, ds.getKey(), instances);
+        if (resource.isCreate()) {
+          createTrue.add(restMetrics);
+        } else {
+          createFalse.add(restMetrics);
         }
       }
+    }
+  }
 
-      restMetrics =
-          new RestMetricsV1()
-              .resourceIds(resource.getIds())
-              .resourceName(resource.getName())
-              .resourceProperties(resource.getProperties())
-              .resourceDescription(resource.getDescription())
-              .dataSource(dataSource.getName())
-              .dataSourceDisplayName(dataSource.getDisplayName())
-              .dataSourceGroup(dataSource.getGroup())
-              .singleInstanceDS(dataSource.getSingleInstanceDS())
-              .dataSourceId(dataSource.getId())
-              .instances(instances);
-
-      if (resource.isCreate()) {
-        listOfRestMetricsV1CreateTrue.add(restMetrics);
-      } else {
-        listOfRestMetricsV1CreateFalse.add(restMetrics);
-      }
+  private static RestMetricsV1 restMetrics(
+      final Resource resource,
+      final DataSource dataSource,
+      final List<RestDataSourceInstanceV1> instances) {
+    return new RestMetricsV1()
+        .resourceIds(resource.getIds())
+        .resourceName(resource.getName())
+        .resourceProperties(resource.getProperties())
+        .resourceDescription(resource.getDescription())
+        .dataSource(dataSource.getName())
+        .dataSourceDisplayName(dataSource.getDisplayName())
+        .dataSourceGroup(dataSource.getGroup())
+        .singleInstanceDS(dataSource.getSingleInstanceDS())
+        .dataSourceId(dataSource.getId())
+        .instances(instances);
+  }
+
+  private static RestDataSourceInstanceV1 restInstance(
+      final DataSourceInstance dataSourceInstance, final List<RestDataPointV1> dataPoints) {
+    return new RestDataSourceInstanceV1()
+        .dataPoints(dataPoints)
+        .instanceDescription(dataSourceInstance.getDescription())
+        .instanceDisplayName(dataSourceInstance.getDisplayName())
+        .instanceName(dataSourceInstance.getName())
+        .instanceProperties(dataSourceInstance.getProperties());
+  }
+
+  private static RestDataPointV1 restDataPoint(
+      final DataPoint dataPoint, final Map<String, String> values) {
+    return new RestDataPointV1()
+        .dataPointAggregationType(dataPoint.getAggregationType())
+        .dataPointDescription(dataPoint.getDescription())
+        .dataPointName(dataPoint.getName())
+        .dataPointType(dataPoint.getType())
+        .values(values)
+        .percentileValue(dataPoint.getPercentileValue());
+  }
+
+  /** return void. */
+  @Override
+  protected void mergeRequest() {
+    final MetricsInput singleRequest = (MetricsInput) getRequest().remove();
+    final Map<String, String> value =
+        cacheEntry(
+            singleRequest.getResource(),
+            singleRequest.getDataSource(),
+            singleRequest.getDataSourceInstance(),
+            singleRequest.getDataPoint(),
+            valueBytes(singleRequest.getValues()));
+    if (value == null) {
+      getRequest().add(singleRequest);
+      flushCache();
+      return;
+    }
+    for (final Entry<String, String> item : singleRequest.getValues().entrySet()) {
+      putValue(value, item.getKey(), item.getValue());
     }
+  }
+
+  /**
+   * Merges a record emitted through the ring buffer. It is validated here rather than by
+   * sendMetrics, which keeps the emit path free of allocation. A record that does not fit flushes
+   * the cache and goes into the empty one.
+   *
+   * @param slot
+   */
+  private void mergeSlot(final MetricsSlot slot) {
     try {
-      if (null != listOfRestMetricsV1CreateTrue && listOfRestMetricsV1CreateTrue.size() > 0) {
-        response =
-            makeRequest(
-                listOfRestMetricsV1CreateTrue,
-                PATH,
-                METHOD,
-                true,
-                Configuration.getAsyncRequest(),
-                Configuration.getgZip());
-        responseHandler(response);
+      validate(slot.resource, slot.dataSource, slot.dataSourceInstance, slot.dataPoint);
+    } catch (RuntimeException e) {
+      log.warn("Metrics record dropped: {}", e.getMessage());
+      dropped(null);
+      slot.clear();
+      return;
+    }
+    final long valueBytes = slot.valueBytes();
+    Map<String, String> value =
+        cacheEntry(
+            slot.resource, slot.dataSource, slot.dataSourceInstance, slot.dataPoint, valueBytes);
+    if (value == null) {
+      flushCache();
+      value =
+          cacheEntry(
+              slot.resource, slot.dataSource, slot.dataSourceInstance, slot.dataPoint, valueBytes);
+    }
+    for (int i = 0; i < slot.valueCount(); i++) {
+      putValue(value, slot.key(i), slot.value(i));
+    }
+    slot.clear();
+  }
+
+  /**
+   * Merges a sample passed to record. The values of the series in the cache are remembered until
+   * the next flush, so only the first sample of a series per batch looks up its entry.
+   *
+   * @param slot
+   */
+  private void mergeSample(final SampleSlot slot) {
+    final MetricsSeries series = slot.series;
+    slot.series = null;
+    final String timestamp = Long.toString(slot.epochSeconds);
+    final String value = SampleColumns.format(slot.value);
+    final long valueBytes = JsonSize.member(timestamp, value) + 1;
+    Map<String, String> values = series.entry(getFlushes());
+    if (values != null && !fits(valueBytes)) {
+      flushCache();
+      values = null;
+    }
+    if (values == null) {
+      values =
+          cacheEntry(
+              series.resource,
+              series.dataSource,
+              series.dataSourceInstance,
+              series.dataPoint,
+              valueBytes);
+      if (values == null) {
+        flushCache();
+        values =
+            cacheEntry(
+                series.resource,
+                series.dataSource,
+                series.dataSourceInstance,
+                series.dataPoint,
+                valueBytes);
       }
-      if (null != listOfRestMetricsV1CreateFalse && listOfRestMetricsV1CreateFalse.size() > 0) {
-        response =
-            makeRequest(
-                listOfRestMetricsV1CreateFalse,
-                PATH,
-                METHOD,
-                false,
-                Configuration.getAsyncRequest(),
-                Configuration.getgZip());
-        responseHandler(response);
+      series.entry(values, getFlushes());
+    }
+    final boolean first = hasNoValues(values);
+    if (values instanceof SampleColumns) {
+      final SampleColumns columns = (SampleColumns) values;
+      if (stage != null && stage(columns, slot.epochSeconds, slot.value, false)) {
+        final long added = addedBytes(first, timestamp, value, null);
+        encodedBytes += added;
+        stagedBytes += added;
+      } else {
+        encodedBytes +=
+            addedBytes(first, timestamp, value, columns.add(slot.epochSeconds, slot.value));
       }
-    } catch (ApiException e) {
-      if (apiCallback != null) {
-        apiCallback.onFailure(e, e.getCode(), e.getResponseHeaders());
+    } else {
+      encodedBytes += addedBytes(first, timestamp, value, values.put(timestamp, value));
+    }
+  }
+
+  /**
+   * Puts a value into the stage when there is one, unless it would not read back as given or the
+   * stage is full: then it goes into the cache.
+   *
+   * @param values of the data point in the cache
+   * @param key epoch seconds
+   * @param value
+   */
+  private void putValue(final Map<String, String> values, final String key, final String value) {
+    final boolean first = hasNoValues(values);
+    if (stage != null && values instanceof SampleColumns && key != null && value != null) {
+      final long epochSeconds = SampleColumns.parseTimestamp(key);
+      final double parsed = epochSeconds < 0 ? Double.NaN : SampleColumns.parseValue(value);
+      if (!Double.isNaN(parsed)
+          && stage(
+              (SampleColumns) values,
+              epochSeconds,
+              parsed,
+              SampleColumns.isDecimal(parsed, value))) {
+        // a timestamp staged twice is counted twice, the payload only gets smaller
+        final long added = addedBytes(first, key, value, null);
+        encodedBytes += added;
+        stagedBytes += added;
+        return;
       }
     }
-    getPayloadCache().remove(removeElement);
+    encodedBytes += addedBytes(first, key, value, values.put(key, value));
+  }
+
+  /**
+   * @param values of a data point in the cache
+   * @return true when the data point has no values yet, in the cache or the stage
+   */
+  private static boolean hasNoValues(final Map<String, String> values) {
+    return values.isEmpty()
+        && !(values instanceof SampleColumns && ((SampleColumns) values).getStageIndex() >= 0);
+  }
+
+  /**
+   * @param first whether the value is the first of its data point
+   * @param key
+   * @param value
+   * @param previous value replaced, null when there was none
+   * @return bytes the value adds to the encoded cache, with the comma before it
+   */
+  private static long addedBytes(
+      final boolean first, final String key, final String value, final String previous) {
+    if (previous != null) {
+      return JsonSize.member(key, value) - JsonSize.member(key, previous);
+    }
+    return value == null ? 0 : JsonSize.member(key, value) + (first ? 0 : 1);
+  }
+
+  /**
+   * @param values of a request
+   * @return most bytes the values add to the encoded cache, as if none of them was cached
+   */
+  private static long valueBytes(final Map<String, String> values) {
+    long bytes = 0;
+    for (final Entry<String, String> item : values.entrySet()) {
+      bytes += JsonSize.member(item.getKey(), item.getValue()) + 1;
+    }
+    return bytes;
+  }
+
+  /**
+   * @param columns of the data point in the cache
+   * @param epochSeconds
+   * @param value
+   * @param decimal whether the value reads back as "10.0" rather than "10"
+   * @return false when the stage is full
+   */
+  private boolean stage(
+      final SampleColumns columns,
+      final long epochSeconds,
+      final double value,
+      final boolean decimal) {
+    final boolean first = columns.getStageIndex() < 0;
+    final int index = first ? stagedColumns.size() : columns.getStageIndex();
+    if (!stage.putSample(index, epochSeconds, value, decimal)) {
+      return false;
+    }
+    if (first) {
+      columns.setStageIndex(index);
+      stagedColumns.add(columns);
+    }
+    return true;
   }
 
-  /** return void. */
-  @SneakyThrows
   @Override
-  protected void mergeRequest() {
-    MetricsInput singleRequest = (MetricsInput) getRequest().remove();
-    int singleRequestSize = singleRequest.toString().getBytes().length;
-    int payloadCacheSize = payloadCache.toString().getBytes().length;
-    int limit = singleRequestSize + payloadCacheSize;
-    int gzipLimit = 0;
-    if (Configuration.getgZip()) {
-      ByteArrayOutputStream out = null;
-      GZIPOutputStream gzip = null;
-      try {
+  protected int mergeSlots() {
+    final RingBuffer<SampleSlot> sampleRing = samples;
+    return (ring == null ? 0 : ring.drain(slotMerger))
+        + (sampleRing == null ? 0 : sampleRing.drain(sampleMerger));
+  }
 
-        byte[] bytes = payloadCache.toString().getBytes(StandardCharsets.UTF_8);
-        byte[] singleRequestBytes = singleRequest.toString().getBytes(StandardCharsets.UTF_8);
-        out = new ByteArrayOutputStream(bytes.length + singleRequestBytes.length);
-        gzip = new GZIPOutputStream(out);
-        gzip.write(bytes);
-        gzip.write(singleRequestBytes);
-      } catch (Exception e) {
-        log.error(e.getMessage());
-      } finally {
-        if (gzip != null) {
-          gzip.flush();
-          gzip.close();
-        }
-        if (out != null) {
-          out.close();
-        }
-      }
-      gzipLimit = out.toString().getBytes().length;
-    }
-    if ((Configuration.getgZip()
-            && gzipLimit
-                <= Constant.DEFAULT_PUSHMETRICS_MAXIMUM_METRICS_PAYLOAD_SIZE_ON_COMPRESSION)
-        || limit <= Constant.DEFAULT_PUSHMETRICS_MAXIMUM_METRICS_PAYLOAD_SIZE) {
-      if (!payloadCache.containsKey(singleRequest.getResource())) {
-        payloadCache.put(singleRequest.getResource(), new HashMap<>());
-      }
-      final Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>>
-          dataSource = payloadCache.get(singleRequest.getResource());
-      if (!dataSource.containsKey(singleRequest.getDataSource())) {
-        dataSource.put(singleRequest.getDataSource(), new HashMap<>());
-      }
-      final Map<DataSourceInstance, Map<DataPoint, Map<String, String>>> instance =
-          dataSource.get(singleRequest.getDataSource());
-      if (instance.size() <= Constant.DEFAULT_PUSHMETRICS_MAXIMUM_INSTANCES_ALLOWED) {
-        if (!instance.containsKey(singleRequest.getDataSourceInstance())) {
-          instance.put(singleRequest.getDataSourceInstance(), new HashMap<>());
-          final Map<DataPoint, Map<String, String>> dataPoint =
-              instance.get(singleRequest.getDataSourceInstance());
-          if (!dataPoint.containsKey(singleRequest.getDataPoint())) {
-            dataPoint.put(singleRequest.getDataPoint(), new HashMap<>());
-          }
-          final Map<String, String> value = dataPoint.get(singleRequest.getDataPoint());
+  /**
+   * @param added most bytes the merge adds to the encoded cache
+   * @return true when the cache still fits into the payload limits, or the cache is empty
+   */
+  private boolean fits(final long added) {
+    if (payloadCache.isEmpty()) {
+      // an empty cache takes any request, flushing it would not make room
+      return true;
+    }
+    if (stage != null && stage.remaining() < OffHeapStage.SAMPLE_BYTES) {
+      // flushing swaps in the empty stage
+      return false;
+    }
+    final long size = encodedBytes + added;
+    return size <= payloadLimit(Constant.DEFAULT_PUSHMETRICS_MAXIMUM_METRICS_PAYLOAD_SIZE)
+        || (Configuration.getgZip()
+            && compressedSize(size)
+                <= payloadLimit(
+                    Constant.DEFAULT_PUSHMETRICS_MAXIMUM_METRICS_PAYLOAD_SIZE_ON_COMPRESSION));
+  }
 
-          for (final Entry<String, String> item : singleRequest.getValues().entrySet()) {
-            value.put(item.getKey(), item.getValue());
-          }
-        }
-      } else {
-        getRequest().add(singleRequest);
-        doRequest();
-      }
-    } else {
-      getRequest().add(singleRequest);
-      doRequest();
+  /**
+   * Estimates the compressed size of the cache by the ratio measured on it. It is measured once
+   * the cache outgrows the uncompressed limit, and again when the estimate is over the limit after
+   * the cache has grown by a quarter, so a batch is compressed a few times rather than per record.
+   * The staged values are not in the measured cache, they count uncompressed.
+   *
+   * @param size encoded bytes
+   * @return estimated compressed bytes
+   */
+  @SneakyThrows
+  private long compressedSize(final long size) {
+    if (compressionRatio == 0
+        || (estimate(size)
+                > payloadLimit(
+                    Constant.DEFAULT_PUSHMETRICS_MAXIMUM_METRICS_PAYLOAD_SIZE_ON_COMPRESSION)
+            && encodedBytes >= measuredBytes + measuredBytes / 4)) {
+      final List<RestMetricsV1> entries = new ArrayList<>();
+      toRestMetrics(payloadCache, entries, entries);
+      compressionRatio = JsonSize.compressionRatio(entries);
+      measuredBytes = encodedBytes;
     }
+    return estimate(size);
+  }
+
+  private long estimate(final long size) {
+    return (long) Math.ceil((size - stagedBytes) * compressionRatio) + stagedBytes;
+  }
+
+  /**
+   * Looks the entry up by the canonical copies of the descriptors, so equal ones share it. The
+   * entries created for it are encoded once, with no children, to add them to the encoded cache.
+   *
+   * @param resource
+   * @param dataSource
+   * @param dataSourceInstance
+   * @param dataPoint
+   * @param valueBytes most bytes the values merged into the entry add to the encoded cache
+   * @return values of the data point in the cache, new ones are SampleColumns, or null when the
+   *     entry and values do not fit into the payload limits or the datasource already holds the
+   *     maximum number of instances
+   */
+  private Map<String, String> cacheEntry(
+      final Resource resource,
+      final DataSource dataSource,
+      final DataSourceInstance dataSourceInstance,
+      final DataPoint dataPoint,
+      final long valueBytes) {
+    if (canonicals == null) {
+      canonicals = new Canonicals();
+    }
+    final Resource resourceKey = canonicals.resource(resource);
+    final DataSource dataSourceKey = canonicals.dataSource(dataSource);
+    final DataSourceInstance instanceKey = canonicals.instance(dataSourceInstance);
+    final DataPoint dataPointKey = canonicals.dataPoint(dataPoint);
+    final Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>>
+        dataSources = payloadCache.get(resourceKey);
+    final Map<DataSourceInstance, Map<DataPoint, Map<String, String>>> instances =
+        dataSources == null ? null : dataSources.get(dataSourceKey);
+    final Map<DataPoint, Map<String, String>> dataPoints =
+        instances == null ? null : instances.get(instanceKey);
+    final Map<String, String> values = dataPoints == null ? null : dataPoints.get(dataPointKey);
+    if (values != null) {
+      return fits(valueBytes) ? values : null;
+    }
+    if (dataPoints == null
+        && instances != null
+        && instances.size() > Constant.DEFAULT_PUSHMETRICS_MAXIMUM_INSTANCES_ALLOWED) {
+      return null;
+    }
+    // a comma before each entry but the first of its list, the brackets with the first entry
+    long added =
+        JsonSize.of(restDataPoint(dataPointKey, Collections.emptyMap()))
+            + (dataPoints == null || dataPoints.isEmpty() ? 0 : 1);
+    if (dataPoints == null) {
+      added +=
+          JsonSize.of(restInstance(instanceKey, Collections.emptyList()))
+              + (instances == null || instances.isEmpty() ? 0 : 1);
+    }
+    if (instances == null) {
+      added +=
+          JsonSize.of(restMetrics(resourceKey, dataSourceKey, Collections.emptyList()))
+              + (payloadCache.isEmpty() ? 2 : 1);
+    }
+    if (!fits(added + valueBytes)) {
+      return null;
+    }
+    final SampleColumns created = new SampleColumns();
+    payloadCache
+        .computeIfAbsent(resourceKey, key -> new HashMap<>())
+        .computeIfAbsent(dataSourceKey, key -> new HashMap<>())
+        .computeIfAbsent(instanceKey, key -> new HashMap<>())
+        .put(dataPointKey, created);
+    encodedBytes += added;
+    return created;
   }
 
   /**
@@ -383,8 +977,6 @@ public class Metrics extends BatchingCache {
   public ApiResponse<String> updateResourceProperties(
       Map<String, String> resourceIds, Map<String, String> resourceProperties, boolean patch)
       throws ApiException, IOException {
-    BatchingCache batchingCache = new Metrics();
-
     String path = "/resource_property/ingest";
     String method = patch ? "PATCH" : "PUT";
     List<RestMetricsV1> listOfRestMetricsV1 = new ArrayList<>();
@@ -401,7 +993,7 @@ public class Metrics extends BatchingCache {
 
     listOfRestMetricsV1.add(restMetrics);
 
-    return batchingCache.makeRequest(
+    return makeRequest(
         listOfRestMetricsV1,
         path,
         method,
@@ -429,7 +1021,6 @@ public class Metrics extends BatchingCache {
       boolean patch)
       throws ApiException, IOException {
 
-    BatchingCache batchingCache = new Metrics();
     List<RestMetrics> restMetricsList = new ArrayList<>();
     String path = "/instance_property/ingest";
     String method = patch ? "PATCH" : "PUT";
@@ -448,7 +1039,7 @@ public class Metrics extends BatchingCache {
 
     restMetricsList.add(restMetrics);
 
-    return batchingCache.makeRequest(
+    return makeRequest(
         restMetricsList,
         path,
         method,
@@ -462,6 +1053,80 @@ public class Metrics extends BatchingCache {
   @Override
   protected void doRequest() {
     createRestMetricsBody(payloadCache);
+    clearSize();
+  }
+
+  /**
+   * Swaps the full cache for the spare one, the full one is sent without holding the cache lock and
+   * becomes the spare once it is sent and emptied.
+   *
+   * @return send of the full cache
+   */
+  @Override
+  protected Supplier<CompletableFuture<Void>> detachCache() {
+    final HashMap<
+            Resource,
+            Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>>>
+        full = payloadCache;
+    if (full.isEmpty()) {
+      return () -> CompletableFuture.completedFuture(null);
+    }
+    final HashMap<
+            Resource,
+            Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>>>
+        spare = spareCache.getAndSet(null);
+    payloadCache = spare != null ? spare : new HashMap<>();
+    clearSize();
+    if (canonicals != null && canonicals.size() > MAX_CANONICALS) {
+      canonicals.clear();
+    }
+    final OffHeapStage fullStage = stage;
+    final List<SampleColumns> fullColumns = stagedColumns;
+    if (stagingBytes > 0) {
+      // null while the spare is still being sent, the cache is then kept on the heap
+      stage = spareStage.getAndSet(null);
+      stagedColumns = new ArrayList<>();
+    }
+    return () -> {
+      try {
+        if (fullStage != null) {
+          fullStage.forEachSample(
+              (entry, epochSeconds, value, decimal) ->
+                  fullColumns.get(entry).add(epochSeconds, value, decimal));
+        }
+        return sendCache(full);
+      } finally {
+        full.clear();
+        spareCache.set(full);
+        if (fullStage != null) {
+          fullStage.clear();
+          // at most two stages are ever allocated
+          spareStage.compareAndSet(null, fullStage);
+        }
+      }
+    };
+  }
+
+  /** @return bytes of the cache encoded as one JSON array */
+  long getEncodedBytes() {
+    return encodedBytes;
+  }
+
+  /** Resets the encoded size once the cache is emptied. */
+  private void clearSize() {
+    encodedBytes = 0;
+    stagedBytes = 0;
+    compressionRatio = 0;
+    measuredBytes = 0;
+  }
+
+  @SneakyThrows
+  private CompletableFuture<Void> sendCache(
+      final Map<
+              Resource,
+              Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>>>
+          cache) {
+    return createRestMetricsBody(cache);
   }
 
   /** @param validator */
@@ -469,11 +1134,6 @@ public class Metrics extends BatchingCache {
     this.validator = validator;
   }
 
-  /** @param client */
-  public void setApiClient(ApiClient client) {
-    this.apiClient = client;
-  }
-
   /** @param resourceValidator */
   public void setResourceValidator(ResourceValidator resourceValidator) {
     this.resourceValidator = resourceValidator;
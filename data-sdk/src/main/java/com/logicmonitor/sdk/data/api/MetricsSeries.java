@@ -0,0 +1,77 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.api;
+
+import com.logicmonitor.sdk.data.model.DataPoint;
+import com.logicmonitor.sdk.data.model.DataSource;
+import com.logicmonitor.sdk.data.model.DataSourceInstance;
+import com.logicmonitor.sdk.data.model.MetricsInput;
+import com.logicmonitor.sdk.data.model.Resource;
+import java.util.Map;
+
+/**
+ * This Class is a series registered with Metrics.register: frozen copies of its descriptors, the
+ * shard merging its samples and the values of the series in the current cache of that shard.
+ */
+final class MetricsSeries {
+
+  final long handle;
+  final Resource resource;
+  final DataSource dataSource;
+  final DataSourceInstance dataSourceInstance;
+  final DataPoint dataPoint;
+  final Metrics target;
+
+  /** Values of the series in the cache of target, guarded by its cache lock. */
+  private Map<String, String> entry;
+
+  /** Flush of target the entry belongs to. */
+  private long entryFlush = -1;
+
+  MetricsSeries(
+      final long handle,
+      final Resource resource,
+      final DataSource dataSource,
+      final DataSourceInstance dataSourceInstance,
+      final DataPoint dataPoint,
+      final Metrics target) {
+    this.handle = handle;
+    this.resource = resource;
+    this.dataSource = dataSource;
+    this.dataSourceInstance = dataSourceInstance;
+    this.dataPoint = dataPoint;
+    this.target = target;
+  }
+
+  /**
+   * @param flushes number of flushes of target so far
+   * @return values of the series in the cache, null when it has no entry since the last flush
+   */
+  Map<String, String> entry(final long flushes) {
+    return flushes == entryFlush ? entry : null;
+  }
+
+  /**
+   * @param entry values of the series in the cache
+   * @param flushes number of flushes of target so far
+   */
+  void entry(final Map<String, String> entry, final long flushes) {
+    this.entry = entry;
+    this.entryFlush = flushes;
+  }
+
+  /** @return MetricsInput of the series without values */
+  MetricsInput input() {
+    final MetricsInput input = new MetricsInput();
+    input.setResource(resource);
+    input.setDataSource(dataSource);
+    input.setDataSourceInstance(dataSourceInstance);
+    input.setDataPoint(dataPoint);
+    return input;
+  }
+}
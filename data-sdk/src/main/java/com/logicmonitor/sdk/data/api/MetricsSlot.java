@@ -0,0 +1,97 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.api;
+
+import com.logicmonitor.sdk.data.internal.JsonSize;
+import com.logicmonitor.sdk.data.model.DataPoint;
+import com.logicmonitor.sdk.data.model.DataSource;
+import com.logicmonitor.sdk.data.model.DataSourceInstance;
+import com.logicmonitor.sdk.data.model.Resource;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * This Class is a reusable record of the Metrics ring buffer. It refers to the model objects passed
+ * to sendMetrics, as MetricsInput does, and copies the values into arrays kept from one use to the
+ * next, so filling it allocates nothing once the arrays have grown to the number of values.
+ */
+final class MetricsSlot implements BiConsumer<String, String> {
+
+  private static final int INITIAL_VALUES = 8;
+
+  Resource resource;
+  DataSource dataSource;
+  DataSourceInstance dataSourceInstance;
+  DataPoint dataPoint;
+
+  private String[] keys = new String[INITIAL_VALUES];
+  private String[] values = new String[INITIAL_VALUES];
+  private int size;
+
+  void set(
+      final Resource resource,
+      final DataSource dataSource,
+      final DataSourceInstance dataSourceInstance,
+      final DataPoint dataPoint,
+      final Map<String, String> values) {
+    this.resource = resource;
+    this.dataSource = dataSource;
+    this.dataSourceInstance = dataSourceInstance;
+    this.dataPoint = dataPoint;
+    size = 0;
+    values.forEach(this);
+  }
+
+  /** Appends one value, called by Map.forEach. */
+  @Override
+  public void accept(final String key, final String value) {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+    }
+    keys[size] = key;
+    values[size] = value;
+    size++;
+  }
+
+  /** @return number of values */
+  int valueCount() {
+    return size;
+  }
+
+  /** @return key of the value at index */
+  String key(final int index) {
+    return keys[index];
+  }
+
+  /** @return value at index */
+  String value(final int index) {
+    return values[index];
+  }
+
+  /** Drops the references, so the slot does not keep the record alive. */
+  void clear() {
+    resource = null;
+    dataSource = null;
+    dataSourceInstance = null;
+    dataPoint = null;
+    Arrays.fill(keys, 0, size, null);
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+  }
+
+  /** @return most bytes the values add to the encoded cache, as if none of them was cached */
+  long valueBytes() {
+    long bytes = 0;
+    for (int i = 0; i < size; i++) {
+      bytes += JsonSize.member(keys[i], values[i]) + 1;
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.api;
+
+import com.logicmonitor.sdk.data.internal.BatchingCache;
+import com.logicmonitor.sdk.data.internal.DemandSink;
+import com.logicmonitor.sdk.data.model.Input;
+import java.util.Objects;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * This Class is a Reactive Streams Subscriber feeding a Metrics or Logs instance, for Reactor,
+ * RxJava and other Reactive Streams publishers. Demand follows the free buffer capacity and
+ * in-flight budget of the instance, see DemandSink.
+ *
+ * @param <T> MetricsInput or LogsInput
+ */
+public class ReactiveSubscriber<T extends Input> implements Subscriber<T> {
+
+  private final DemandSink<T> sink;
+
+  /** @param cache Metrics or Logs instance the items are sent with */
+  ReactiveSubscriber(final BatchingCache cache) {
+    this.sink = new DemandSink<>(cache);
+  }
+
+  @Override
+  public void onSubscribe(final Subscription subscription) {
+    Objects.requireNonNull(subscription, "subscription");
+    if (!sink.onSubscribe(subscription::request, subscription::cancel)) {
+      subscription.cancel();
+    }
+  }
+
+  @Override
+  public void onNext(final T item) {
+    sink.onNext(Objects.requireNonNull(item, "item"));
+  }
+
+  @Override
+  public void onError(final Throwable throwable) {
+    sink.onError(Objects.requireNonNull(throwable, "throwable"));
+  }
+
+  @Override
+  public void onComplete() {
+    sink.onComplete();
+  }
+
+  /** Cancels the subscription, items already received are still sent. */
+  public void cancel() {
+    sink.cancel();
+  }
+}
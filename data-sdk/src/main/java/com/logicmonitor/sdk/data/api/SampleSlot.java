@@ -0,0 +1,19 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.api;
+
+/**
+ * This Class is a reusable record of a sample passed to Metrics.record, filling it is a handful of
+ * field writes.
+ */
+final class SampleSlot {
+
+  MetricsSeries series;
+  long epochSeconds;
+  double value;
+}
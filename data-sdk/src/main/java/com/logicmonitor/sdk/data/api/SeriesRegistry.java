@@ -0,0 +1,101 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.api;
+
+import com.logicmonitor.sdk.data.internal.Canonicals;
+import com.logicmonitor.sdk.data.model.DataPoint;
+import com.logicmonitor.sdk.data.model.DataSource;
+import com.logicmonitor.sdk.data.model.DataSourceInstance;
+import com.logicmonitor.sdk.data.model.Resource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * This Class holds the series registered with Metrics.register. A handle is the index of its
+ * series, so looking one up is an array read without locking; registering the same descriptors
+ * again returns the handle they already have.
+ */
+final class SeriesRegistry {
+
+  private final Canonicals canonicals = new Canonicals();
+
+  /** Handle of each series, keyed by its canonical descriptors. */
+  private final Map<List<Object>, Long> handles = new HashMap<>();
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** Series by handle, grown by doubling and replaced before size is raised. */
+  private volatile MetricsSeries[] series = new MetricsSeries[INITIAL_CAPACITY];
+
+  private volatile int size;
+
+  /**
+   * @param resource
+   * @param dataSource
+   * @param dataSourceInstance
+   * @param dataPoint
+   * @param route shard merging the samples of a resource
+   * @return the series of the descriptors, registered if needed
+   */
+  synchronized MetricsSeries register(
+      final Resource resource,
+      final DataSource dataSource,
+      final DataSourceInstance dataSourceInstance,
+      final DataPoint dataPoint,
+      final Function<Resource, Metrics> route) {
+    final Resource frozenResource = canonicals.resource(resource);
+    final DataSource frozenDataSource = canonicals.dataSource(dataSource);
+    final DataSourceInstance frozenInstance = canonicals.instance(dataSourceInstance);
+    final DataPoint frozenDataPoint = canonicals.dataPoint(dataPoint);
+    final List<Object> key =
+        Arrays.asList(frozenResource, frozenDataSource, frozenInstance, frozenDataPoint);
+    final Long known = handles.get(key);
+    if (known != null) {
+      return series[known.intValue()];
+    }
+    MetricsSeries[] current = series;
+    if (size == current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+    }
+    final MetricsSeries registered =
+        new MetricsSeries(
+            size,
+            frozenResource,
+            frozenDataSource,
+            frozenInstance,
+            frozenDataPoint,
+            route.apply(frozenResource));
+    current[size] = registered;
+    series = current;
+    size++;
+    handles.put(key, registered.handle);
+    return registered;
+  }
+
+  /**
+   * @param handle returned by register
+   * @return series of the handle
+   */
+  MetricsSeries get(final long handle) {
+    // size is read first, the series it covers were stored before it was raised
+    final int registered = size;
+    final MetricsSeries[] current = series;
+    if (handle < 0 || handle >= registered) {
+      throw new IllegalArgumentException("Unknown series handle " + handle);
+    }
+    return current[(int) handle];
+  }
+
+  /** @return number of series registered */
+  int size() {
+    return size;
+  }
+}
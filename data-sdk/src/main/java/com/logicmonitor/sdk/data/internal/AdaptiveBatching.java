@@ -0,0 +1,117 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import java.io.IOException;
+import org.openapitools.client.ApiException;
+
+/**
+ * This Class tunes the batch size and flush interval of a batching cache AIMD-style, from the
+ * latency and outcome of its requests and from the depth of its queue.
+ *
+ * <ul>
+ *   <li>The batch size, a fraction of the server limits, halves when a request is slower than
+ *       Configuration.getTargetLatency() or fails with an overload, and grows by a sixteenth of
+ *       the limits after every fast successful request.
+ *   <li>The interval doubles when a request fails with an overload, up to four times the
+ *       configured interval. It shrinks by a sixteenth of the configured interval while the queue
+ *       holds more than a batch, down to the spacing allowed by
+ *       Configuration.getRequestPerMinute(), and otherwise drifts back to the configured interval.
+ * </ul>
+ *
+ * <p>Only network errors, 429 and 5xx responses count as overloads, see isOverload.
+ */
+public class AdaptiveBatching {
+
+  static final double MIN_FRACTION = 1.0 / 16;
+
+  private static final long MIN_INTERVAL_MILLIS = 100;
+
+  private final long baseIntervalMillis;
+  private double fraction = 1;
+  private long intervalMillis;
+
+  /** @param baseIntervalMillis interval configured for the cache */
+  public AdaptiveBatching(final long baseIntervalMillis) {
+    this.baseIntervalMillis = baseIntervalMillis;
+    this.intervalMillis = baseIntervalMillis;
+  }
+
+  /**
+   * @param e failure of a request
+   * @return true for network errors, 429 and 5xx responses. Client-side rate limit rejections and
+   *     other 4xx responses say nothing about the load of the server.
+   */
+  public static boolean isOverload(final ApiException e) {
+    final int code = e.getCode();
+    if (code == 0) {
+      for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+        if (cause instanceof IOException) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return code == 429 || code >= 500;
+  }
+
+  /**
+   * @param latencyMillis time from sending the request to its response
+   * @param failed true when the request failed with an overload
+   */
+  public synchronized void onResponse(final long latencyMillis, final boolean failed) {
+    if (failed) {
+      fraction = Math.max(MIN_FRACTION, fraction / 2);
+      intervalMillis = Math.min(maxIntervalMillis(), Math.max(1, intervalMillis) * 2);
+    } else if (latencyMillis > Configuration.getTargetLatency()) {
+      fraction = Math.max(MIN_FRACTION, fraction / 2);
+    } else {
+      fraction = Math.min(1, fraction + MIN_FRACTION);
+    }
+  }
+
+  /** @param depth number of requests waiting to be merged */
+  public synchronized void onQueueDepth(final int depth) {
+    final long step = Math.max(1, baseIntervalMillis / 16);
+    if (depth > flushThreshold()) {
+      intervalMillis = Math.max(minIntervalMillis(), intervalMillis - step);
+    } else if (intervalMillis < baseIntervalMillis) {
+      intervalMillis = Math.min(baseIntervalMillis, intervalMillis + step);
+    } else if (intervalMillis > baseIntervalMillis) {
+      intervalMillis = Math.max(baseIntervalMillis, intervalMillis - step);
+    }
+  }
+
+  /**
+   * @param hardLimit payload size the server accepts
+   * @return payload size to aim for, never above hardLimit
+   */
+  public synchronized long payloadLimit(final long hardLimit) {
+    return (long) (hardLimit * fraction);
+  }
+
+  /** @return number of merged requests that trigger a flush */
+  public synchronized int flushThreshold() {
+    return Math.max(1, (int) (Configuration.getFlushThreshold() * fraction));
+  }
+
+  /** @return current flush interval in milliseconds */
+  public synchronized long intervalMillis() {
+    return intervalMillis;
+  }
+
+  private long maxIntervalMillis() {
+    return Math.max(baseIntervalMillis * 4, minIntervalMillis());
+  }
+
+  /** @return interval keeping a single cache within Configuration.getRequestPerMinute() */
+  private static long minIntervalMillis() {
+    return Math.max(MIN_INTERVAL_MILLIS, 60000L / Math.max(1, Configuration.getRequestPerMinute()));
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntSupplier;
+
+/**
+ * This Class limits how many requests are in flight at once without blocking a thread: acquire
+ * returns a future completed once a permit is free. A released permit goes straight to the oldest
+ * waiter, which is resumed on SdkRuntime.tasks() rather than on the releasing thread.
+ */
+public class AsyncPermits {
+
+  private final IntSupplier limit;
+
+  /** Waiters in arrival order, guarded by this. */
+  private final Queue<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+
+  /** Permits taken, guarded by this. */
+  private int used;
+
+  /** @param limit number of permits, read on every acquire */
+  public AsyncPermits(final IntSupplier limit) {
+    this.limit = limit;
+  }
+
+  /** @return true when a permit was free and is now taken */
+  public synchronized boolean tryAcquire() {
+    if (used < limit.getAsInt()) {
+      used++;
+      return true;
+    }
+    return false;
+  }
+
+  /** @return CompletableFuture completed once a permit is taken */
+  public CompletableFuture<Void> acquire() {
+    synchronized (this) {
+      if (used < limit.getAsInt()) {
+        used++;
+        return CompletableFuture.completedFuture(null);
+      }
+      final CompletableFuture<Void> waiter = new CompletableFuture<>();
+      waiting.add(waiter);
+      return waiter;
+    }
+  }
+
+  /** Gives a permit back, handing it to the oldest waiter when there is one. */
+  public void release() {
+    final CompletableFuture<Void> next;
+    synchronized (this) {
+      // a lowered limit takes permits back before waiters get them
+      next = used <= limit.getAsInt() ? waiting.poll() : null;
+      if (next == null) {
+        used--;
+      }
+    }
+    if (next != null) {
+      SdkRuntime.tasks().execute(() -> next.complete(null));
+    }
+  }
+
+  /** @return number of permits taken */
+  public synchronized int getUsed() {
+    return used;
+  }
+
+  /** @return number of acquires waiting for a permit */
+  public synchronized int getWaiting() {
+    return waiting.size();
+  }
+}
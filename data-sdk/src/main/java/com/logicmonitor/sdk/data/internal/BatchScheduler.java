@@ -0,0 +1,129 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This Class drives the merging and flushing of a BatchingCache without polling. A merge is
+ * scheduled as soon as a request arrives. After a merge the cache is flushed immediately when the
+ * flush threshold is reached, otherwise a flush is scheduled for the interval after the first entry
+ * was merged. Nothing runs while no data arrives.
+ *
+ * <p>Tasks run on SdkRuntime.tasks(), shared by every instance. A merge and a flush of the same
+ * cache may run on different threads, BatchingCache serializes them with its locks.
+ */
+@Slf4j
+public class BatchScheduler {
+
+  private final IntSupplier merge;
+  private final Runnable flush;
+  private final LongSupplier intervalMillis;
+  private final IntSupplier flushThreshold;
+  private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+  private final Runnable mergeTask = this::runMerge;
+  private volatile boolean closed;
+
+  /** Entries merged since the last flush, guarded by this. */
+  private int pendingEntries;
+
+  /** Flush scheduled for the deadline, guarded by this. */
+  private ScheduledFuture<?> deadline;
+
+  /**
+   * @param merge merges every queued request into the cache, returns the number merged
+   * @param flush sends the cache
+   * @param intervalMillis longest time a merged entry waits for its flush
+   */
+  public BatchScheduler(
+      final IntSupplier merge, final Runnable flush, final LongSupplier intervalMillis) {
+    this(merge, flush, intervalMillis, Configuration::getFlushThreshold);
+  }
+
+  /**
+   * @param merge merges every queued request into the cache, returns the number merged
+   * @param flush sends the cache
+   * @param intervalMillis longest time a merged entry waits for its flush
+   * @param flushThreshold number of merged entries that trigger a flush
+   */
+  public BatchScheduler(
+      final IntSupplier merge,
+      final Runnable flush,
+      final LongSupplier intervalMillis,
+      final IntSupplier flushThreshold) {
+    this.merge = merge;
+    this.flush = flush;
+    this.intervalMillis = intervalMillis;
+    this.flushThreshold = flushThreshold;
+  }
+
+  /** Called after a request was queued, schedules a merge unless one is already pending. */
+  public void onArrival() {
+    if (!closed && mergeScheduled.compareAndSet(false, true)) {
+      SdkRuntime.tasks().execute(mergeTask);
+    }
+  }
+
+  /** Stops scheduling, the owner drains the cache itself. */
+  public void close() {
+    closed = true;
+    synchronized (this) {
+      if (deadline != null) {
+        deadline.cancel(false);
+        deadline = null;
+      }
+      pendingEntries = 0;
+    }
+  }
+
+  private void runMerge() {
+    // requests queued from here on schedule the next merge
+    mergeScheduled.set(false);
+    final int merged;
+    try {
+      merged = merge.getAsInt();
+    } catch (RuntimeException e) {
+      log.error("Exception:", e);
+      return;
+    }
+    if (merged == 0 || closed) {
+      return;
+    }
+    final boolean flushNow;
+    synchronized (this) {
+      pendingEntries += merged;
+      flushNow = pendingEntries >= flushThreshold.getAsInt();
+      if (!flushNow && deadline == null) {
+        deadline = SdkRuntime.delay(this::runFlush, Math.max(0, intervalMillis.getAsLong()));
+      }
+    }
+    if (flushNow) {
+      runFlush();
+    }
+  }
+
+  private void runFlush() {
+    synchronized (this) {
+      if (deadline != null) {
+        deadline.cancel(false);
+        deadline = null;
+      }
+      pendingEntries = 0;
+    }
+    try {
+      flush.run();
+    } catch (RuntimeException e) {
+      log.error("Exception: ", e);
+    }
+  }
+}
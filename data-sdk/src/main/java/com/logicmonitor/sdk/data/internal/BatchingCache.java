@@ -8,49 +8,99 @@
 package com.logicmonitor.sdk.data.internal;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonParseException;
 import com.logicmonitor.sdk.data.ApiClientUserAgent;
 import com.logicmonitor.sdk.data.Configuration;
+import com.logicmonitor.sdk.data.Constant;
+import com.logicmonitor.sdk.data.DropCallback;
+import com.logicmonitor.sdk.data.OverflowPolicy;
 import com.logicmonitor.sdk.data.model.*;
-import java.io.ByteArrayOutputStream;
+import com.logicmonitor.sdk.data.transport.OkHttpTransport;
+import com.logicmonitor.sdk.data.transport.Transport;
+import com.logicmonitor.sdk.data.transport.TransportRequest;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.Call;
 import org.openapitools.client.*;
+import org.openapitools.client.model.PushMetricAPIResponseV2;
+import org.openapitools.client.model.PushMetricErrorResponse;
+import org.openapitools.client.model.RestMetricsV1;
 
 /** This Class is used send multiple request . */
 @Getter
 @Setter
 @Slf4j
-public abstract class BatchingCache {
+public abstract class BatchingCache implements AutoCloseable {
 
   private static final String PATH = "/v2/metric/ingest";
 
-  protected Queue<Input> rawRequest = new LinkedList<>();
+  /** Set while a flush runs on an SDK thread, which hands its sends off instead of waiting. */
+  private static final ThreadLocal<Boolean> BACKGROUND_FLUSH = new ThreadLocal<>();
+
+  /** Filled by any thread through addRequest, drained under queueLock. */
+  protected Queue<Input> rawRequest = new MpscChunkedQueue<>();
   protected HashMap<
           Resource, Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>>>
       payloadCache = new HashMap<>();
   protected List<LogsInput> logPayloadCache = new ArrayList<>();
   protected boolean batch;
   protected ApiCallback apiCallback;
-  private long lastTimeSend;
-  private Thread mergeThread;
-  private Thread requestThread;
+  private Transport transport;
+  /** Merges and flushes the cache while batching, null otherwise. */
+  private BatchScheduler scheduler;
+  /** Bounds the requests queued or merged while batching, null otherwise. */
+  private BufferLimiter limiter;
+  /** Tunes batch size and interval, null unless Configuration.getAdaptiveBatching() was set. */
+  private AdaptiveBatching adaptive;
+  /** Notified of requests dropped by the OverflowPolicy. */
+  private DropCallback dropCallback;
+  private final AtomicLong droppedRequests = new AtomicLong();
+  /** Set by close, requests added afterwards are dropped. */
+  private volatile boolean closed;
+  /** Requests merged into the cache since its last flush, guarded by cacheLock. */
+  private int cachedEntries;
+  /** Number of flushes, guarded by cacheLock. */
+  private long flushes;
+  /** Held by the single consumer of rawRequest. */
   private Object queueLock = new Object();
   private Object cacheLock = new Object();
-  private int interval = 0;
+  /** Longest time in milliseconds a merged entry waits for its flush. */
+  private volatile long intervalMillis;
+  /** Connection warm-up, null unless Configuration.getPrewarmConnections() was set. */
+  private CompletableFuture<Duration> warmUp;
 
   private static long startTime = System.currentTimeMillis();
 
   private static int metricsCounter = 1, logCounter = 1;
 
+  /** Requests in flight, sent with makeRequestAsync or by a flush, of every instance. */
+  private static final AsyncPermits IN_FLIGHT =
+      new AsyncPermits(Configuration::getMaxInFlightRequests);
+
+  private static final Gson GSON = new Gson();
+
+  private static final RetryPolicy RETRY_POLICY = new RetryPolicy();
+
+  /** Pause between claims while a ring buffer is full under OverflowPolicy.BLOCK. */
+  private static final long RING_FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
   /** @param conf This is configuration variable */
   public BatchingCache(final Configuration conf) {
     this(conf, 10, true);
@@ -62,8 +112,9 @@ public abstract class BatchingCache {
    * @param batch
    */
   public BatchingCache(final Configuration conf, final int interval, final boolean batch) {
-    this.interval = interval;
+    this.intervalMillis = interval * 1000L;
     this.batch = batch;
+    checkWarmUp();
     checkBatch();
   }
 
@@ -78,10 +129,11 @@ public abstract class BatchingCache {
       final int interval,
       final boolean batch,
       ApiCallback responseCallback) {
-    this.interval = interval;
+    this.intervalMillis = interval * 1000L;
     this.batch = batch;
     apiCallback = responseCallback;
 
+    checkWarmUp();
     checkBatch();
   }
 
@@ -94,6 +146,18 @@ public abstract class BatchingCache {
     apiCallback = responseCallback;
   }
 
+  /**
+   * Creates a batching shard of owner. It shares the buffer limit and adaptive batching of owner
+   * and only gets a BatchScheduler of its own, connections were already warmed up by owner.
+   *
+   * @param owner
+   */
+  protected BatchingCache(final BatchingCache owner) {
+    this.batch = true;
+    inheritFrom(owner);
+    startScheduler();
+  }
+
   /** @param response */
   protected void responseHandler(ApiResponse response) {
     ApiException apiException = new ApiException();
@@ -119,59 +183,374 @@ public abstract class BatchingCache {
   /** Abstract Method. */
   protected abstract void doRequest();
 
-  /** @param body */
+  /**
+   * Queues the request, while batching it may be dropped instead as decided by
+   * Configuration.getOverflowPolicy() once Configuration.getBufferCapacity() is reached.
+   *
+   * @param body
+   */
   public void addRequest(final Input body) {
-    synchronized (queueLock) {
-      rawRequest.add(body);
+    if (closed) {
+      log.warn("Request added after close is dropped");
+      dropped(body);
+      return;
+    }
+    final BatchingCache target = route(body);
+    if (limiter != null && !admit(body, target)) {
+      return;
+    }
+    target.rawRequest.add(body);
+    if (target.scheduler != null) {
+      target.scheduler.onArrival();
     }
   }
 
-  /** Merging all the Request while Batching. */
-  @SneakyThrows
-  public void commonMergeRequest() {
-    while (true) {
-      if (getRequest().size() > 0) {
-        synchronized (queueLock) {
-          synchronized (cacheLock) {
-            try {
-              this.mergeRequest();
-            } catch (Exception e) {
-              log.error("Exception:", e);
+  /**
+   * @param body request being added
+   * @return cache the request is merged into, this unless the subclass shards its cache
+   */
+  protected BatchingCache route(final Input body) {
+    return this;
+  }
+
+  /**
+   * Makes this cache a shard of owner: requests are sent with the settings of owner and count
+   * against its buffer capacity.
+   *
+   * @param owner
+   */
+  protected void inheritFrom(final BatchingCache owner) {
+    transport = owner.transport;
+    apiCallback = owner.apiCallback;
+    intervalMillis = owner.intervalMillis;
+    limiter = owner.limiter;
+    // drops are counted and reported by the owner
+    dropCallback = (input, dropped) -> owner.dropped(input);
+    adaptive = owner.adaptive;
+  }
+
+  /** @return every cache requests are merged into, this unless the subclass shards its cache */
+  protected List<? extends BatchingCache> shards() {
+    return Collections.singletonList(this);
+  }
+
+  /**
+   * Merges every queued Request into the cache, called by the BatchScheduler after requests
+   * arrive.
+   *
+   * @return number of requests merged
+   */
+  public int commonMergeRequest() {
+    int merged = 0;
+    synchronized (queueLock) {
+      if (adaptive != null) {
+        adaptive.onQueueDepth(getRequest().size());
+      }
+      synchronized (cacheLock) {
+        while (!getRequest().isEmpty()) {
+          final long flushed = flushes;
+          try {
+            this.mergeRequest();
+            merged++;
+            // a request that did not fit was put back in the queue and the cache was flushed
+            if (flushes == flushed) {
+              cachedEntries++;
+            }
+          } catch (Exception e) {
+            log.error("Exception:", e);
+            if (limiter != null) {
+              limiter.release(1);
             }
           }
         }
-      } else {
-        Thread.sleep(1000);
+        try {
+          merged += mergeSlots();
+        } catch (Exception e) {
+          log.error("Exception:", e);
+        }
       }
     }
+    return merged;
   }
 
-  /** Called while Batching. */
-  @SneakyThrows
+  /**
+   * Merges the records published to the ring buffer of the subclass, if it has one. Callers hold
+   * queueLock and cacheLock.
+   *
+   * @return number of records merged
+   */
+  protected int mergeSlots() {
+    return 0;
+  }
+
+  /**
+   * Claims a slot of a ring buffer for a record being added, applying the OverflowPolicy when the
+   * ring is full: BLOCK waits up to Configuration.getOverflowTimeout() for the consumer, the other
+   * policies give up at once.
+   *
+   * @param ring
+   * @return sequence of the claimed slot, -1 when the record must be dropped
+   */
+  protected long claim(final RingBuffer<?> ring) {
+    if (closed) {
+      log.warn("Request added after close is dropped");
+      return -1;
+    }
+    long sequence = ring.tryClaim();
+    if (sequence >= 0 || Configuration.getOverflowPolicy() != OverflowPolicy.BLOCK) {
+      return sequence;
+    }
+    final long deadline =
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Configuration.getOverflowTimeout());
+    while ((sequence = ring.tryClaim()) < 0 && System.nanoTime() < deadline) {
+      LockSupport.parkNanos(RING_FULL_PARK_NANOS);
+    }
+    return sequence;
+  }
+
+  /**
+   * Sends the cache, called by the BatchScheduler on the size threshold or the deadline. Only the
+   * swap of the cache holds cacheLock, merging goes on while the requests are sent.
+   */
   public void commonDoRequest() {
-    while (true) {
-      long currentTime = System.currentTimeMillis();
-      if (currentTime > (lastTimeSend + (interval * 1000))) {
-        synchronized (cacheLock) {
-          try {
-            this.doRequest();
-          } catch (Exception e) {
-            log.error("Exception: ", e);
+    final Runnable send;
+    synchronized (cacheLock) {
+      send = detach();
+    }
+    try {
+      send.run();
+    } catch (Exception e) {
+      log.error("Exception: ", e);
+    }
+  }
+
+  /**
+   * Sends the cache on a worker thread, called by mergeRequest when a request does not fit.
+   * Callers hold cacheLock.
+   */
+  protected void flushCache() {
+    SdkRuntime.schedule(inBackground(detach()), 0);
+  }
+
+  /**
+   * @param flush
+   * @return flush marked as running on an SDK thread, so sendPayloads does not wait for its sends
+   */
+  private static Runnable inBackground(final Runnable flush) {
+    return () -> {
+      BACKGROUND_FLUSH.set(Boolean.TRUE);
+      try {
+        flush.run();
+      } finally {
+        BACKGROUND_FLUSH.remove();
+      }
+    };
+  }
+
+  /**
+   * Takes the merged requests out of the cache and starts an empty one, callers hold cacheLock.
+   * Subclasses swap in a spare buffer and return the send of the detached one, which runs without
+   * any lock. The default sends the cache with doRequest right away and returns a no-op.
+   *
+   * @return send of the detached requests, its future completes once their sends are handled
+   */
+  protected Supplier<CompletableFuture<Void>> detachCache() {
+    doRequest();
+    return () -> CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * @return send of the detached cache, the buffer capacity it held is freed once its sends are
+   *     handled, including their retries
+   */
+  private Runnable detach() {
+    final int released = cachedEntries;
+    cachedEntries = 0;
+    flushes++;
+    final Supplier<CompletableFuture<Void>> send = detachCache();
+    return () -> {
+      CompletableFuture<Void> sent = null;
+      try {
+        sent = send.get();
+      } finally {
+        if (limiter != null) {
+          if (sent == null) {
+            limiter.release(released);
+          } else {
+            // counted as outstanding until the capacity is freed
+            SdkRuntime.track(sent.whenComplete((result, throwable) -> limiter.release(released)));
           }
         }
-        lastTimeSend = currentTime;
-      } else {
-        Thread.sleep(1000);
+      }
+    };
+  }
+
+  /**
+   * Merges and sends everything added so far on the calling thread, then waits for the requests of
+   * every instance still in flight or waiting for a retry.
+   *
+   * @param timeout
+   * @param unit
+   * @return true when everything was sent before the timeout
+   */
+  public boolean flush(final long timeout, final TimeUnit unit) {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (final BatchingCache shard : shards()) {
+      shard.commonMergeRequest();
+      shard.commonDoRequest();
+    }
+    try {
+      return SdkRuntime.awaitDrained(deadline);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Stops accepting requests and flushes the ones already added. The shared worker threads keep
+   * running for the other instances.
+   *
+   * @param timeout
+   * @param unit
+   * @return true when everything was sent before the timeout
+   */
+  public boolean close(final long timeout, final TimeUnit unit) {
+    closed = true;
+    for (final BatchingCache shard : shards()) {
+      shard.closed = true;
+      if (shard.scheduler != null) {
+        shard.scheduler.close();
       }
     }
+    return flush(timeout, unit);
+  }
+
+  /** Closes with a timeout of Constant.DEFAULT_CLOSE_TIMEOUT_SECONDS. */
+  @Override
+  public void close() {
+    if (!close(Constant.DEFAULT_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+      log.warn(
+          "Requests still outstanding after {} seconds", Constant.DEFAULT_CLOSE_TIMEOUT_SECONDS);
+    }
+  }
+
+  /**
+   * Hands a request from a DemandSink to the cache: queued when batching, otherwise sent without
+   * blocking.
+   *
+   * @param input
+   * @return CompletableFuture completed once the request no longer counts against demandCredit()
+   */
+  protected CompletableFuture<?> submit(final Input input) {
+    if (batch) {
+      addRequest(input);
+      return CompletableFuture.completedFuture(null);
+    }
+    return sendAsync(input);
+  }
+
+  /**
+   * @param input
+   * @return CompletableFuture completed with the ApiResponse, or exceptionally with an
+   *     ApiException
+   */
+  protected abstract CompletableFuture<ApiResponse<String>> sendAsync(final Input input);
+
+  /**
+   * Number of requests a subscriber may have outstanding: the free buffer capacity scaled by the
+   * share of Configuration.getMaxInFlightRequests() not taken by pending sends. Without batching
+   * every request is a send, so only the in-flight budget counts.
+   *
+   * @return credit, 0 when nothing should be requested
+   */
+  protected long demandCredit() {
+    final int maxInFlight = Configuration.getMaxInFlightRequests();
+    if (limiter == null) {
+      return Math.max(0, maxInFlight - getInFlightRequests());
+    }
+    final long inFlightBudget = Math.max(0, maxInFlight - SdkRuntime.getPending());
+    final long free = Math.max(0, Configuration.getBufferCapacity() - limiter.getBuffered());
+    return free * inFlightBudget / maxInFlight;
+  }
+
+  /** @return number of requests dropped because the buffer was full */
+  public long getDroppedRequests() {
+    return droppedRequests.get();
   }
 
   /**
+   * @param body
+   * @param target cache the request is queued in
+   * @return true when the request may be queued, otherwise it was dropped
+   */
+  private boolean admit(final Input body, final BatchingCache target) {
+    switch (Configuration.getOverflowPolicy()) {
+      case BLOCK:
+        try {
+          if (limiter.acquire(Configuration.getOverflowTimeout())) {
+            return true;
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        break;
+      case DROP_OLDEST:
+        if (limiter.tryAcquire()) {
+          return true;
+        }
+        final Input oldest;
+        synchronized (target.queueLock) {
+          oldest = target.rawRequest.poll();
+        }
+        if (oldest != null) {
+          // the new request takes over the slot of the oldest one
+          dropped(oldest);
+          return true;
+        }
+        break;
+      case SAMPLE:
+        if (limiter.tryAcquireSampled()) {
+          return true;
+        }
+        break;
+      default:
+        if (limiter.tryAcquire()) {
+          return true;
+        }
+    }
+    dropped(body);
+    return false;
+  }
+
+  /** @param input request dropped, null for a ring buffer record */
+  protected void dropped(final Input input) {
+    final long dropped = droppedRequests.incrementAndGet();
+    if (dropCallback != null) {
+      dropCallback.onDrop(input, dropped);
+    }
+  }
+
+  /** @return interval in seconds, rounded down */
+  public int getInterval() {
+    return (int) (intervalMillis / 1000);
+  }
+
+  /** @param interval in seconds */
+  public void setInterval(final int interval) {
+    setIntervalMillis(interval * 1000L);
+  }
+
+  /**
+   * Sends the request, retrying failed attempts as allowed by RetryPolicy. A synchronous request
+   * waits out the backoff in the calling thread.
+   *
    * @param body
    * @param path
    * @param method
    * @param create
-   * @param async
+   * @param async when true the request is sent with makeRequestAsync, the result is passed to the
+   *     ApiCallback and null is returned
    * @return
    * @throws ApiException
    */
@@ -185,107 +564,591 @@ public abstract class BatchingCache {
       boolean gZip)
       throws ApiException, IOException {
 
-    String userAgentSuffix = getUserAgentSuffix(System.getenv("APPLICATION_NAME"));
-    final ApiClientUserAgent apiClient = new ApiClientUserAgent(userAgentSuffix);
-    final Pair pair = new Pair("create", String.valueOf(create));
-    final List<Pair> queryParams = new ArrayList<>();
-    final List<Pair> collectionQueryParams = new ArrayList<>();
-    Call call;
-    if (create && path == PATH) {
-      queryParams.add(pair);
+    if (async) {
+      makeRequestAsync(body, path, method, create, gZip)
+          .whenComplete(
+              (response, throwable) -> {
+                if (throwable == null) {
+                  responseHandler(response);
+                } else if (apiCallback != null) {
+                  final ApiException e = toApiException(throwable);
+                  apiCallback.onFailure(e, e.getCode(), e.getResponseHeaders());
+                }
+              });
+      return null;
     }
-    final Map<String, String> headersParams = new HashMap<>();
-    final Map<String, String> cookieParams = new HashMap<>();
-    final Map<String, Object> formParams = new HashMap<>();
-    final String[] authSetting = {"LMv1"};
-    final String[] localVarContentTypes = {"application/json"};
-
-    headersParams.put("Accept", apiClient.selectHeaderContentType(localVarContentTypes));
-    headersParams.put("Content-Type", apiClient.selectHeaderContentType(localVarContentTypes));
-    if (method.equalsIgnoreCase("POST")) {
-      headersParams.put(
-          "Authorization", Configuration.getAuthToken(new Gson().toJson(body), method, path));
-    } else {
-      headersParams.put(
-          "Authorization",
-          Configuration.getAuthToken(new Gson().toJson(body.get(0)), method, path));
-    }
-
-    log.debug("Request: " + new Gson().toJson(body));
-
-    final String companyUrl = Configuration.setCompany();
-    apiClient.setBasePath(companyUrl);
-    /*We need this loop as we are using "okhttp3" so body with patch and put is not executed properly, so body.get(0) i.e. object for the same is send.
-    when we are sending list as a body for PATCH and PUT it gives "bad request" as internally we have serialisation for body (in okhttp3) for which body is not formed correctly.*/
-    if (method.equalsIgnoreCase("PUT") || method.equalsIgnoreCase("PATCH")) {
-      call =
-          apiClient.buildCall(
-              apiClient.getBasePath(),
-              path,
-              method,
-              queryParams,
-              collectionQueryParams,
-              body.get(0),
-              headersParams,
-              cookieParams,
-              formParams,
-              authSetting,
-              apiCallback);
-    } else {
-      call =
-          apiClient.buildCall(
-              apiClient.getBasePath(),
+    final PayloadBuffer buffer = encode(body, method);
+    try {
+      int attempt = 1;
+      while (true) {
+        final long start = System.nanoTime();
+        try {
+          final ApiResponse<String> syncReponse;
+          boolean timeRateLimit = checkNumberOfRequest(path);
+          if (timeRateLimit) {
+            syncReponse = getTransport().execute(buildRequest(buffer, path, method, create, gZip));
+          } else if (method.equalsIgnoreCase("PUT") || method.equalsIgnoreCase("PATCH")) {
+            syncReponse = getTransport().execute(buildRequest(buffer, path, method, create, gZip));
+          } else {
+            throw new Exception("The number of requests exceeds the rate limit");
+          }
+          observe(start, null);
+          RETRY_POLICY.onSuccess();
+          return syncReponse;
+        } catch (ApiException e) {
+          observe(start, e);
+          if (!RETRY_POLICY.shouldRetry(e, attempt)) {
+            throw new ApiException(
+                e.getCode() + " " + e.getMessage() + " " + e.getResponseBody());
+          }
+          final long delay = RETRY_POLICY.delayMillis(e, attempt);
+          log.warn(
+              "Request to {} failed with {}, retry {} in {} ms",
               path,
-              method,
-              queryParams,
-              collectionQueryParams,
-              body,
-              headersParams,
-              cookieParams,
-              formParams,
-              authSetting,
-              apiCallback);
-    }
-
-    if (gZip) {
-      headersParams.put("Content-Encoding", "gzip");
-      ByteArrayOutputStream out = null;
-      GZIPOutputStream gzip = null;
-      try {
+              e.getCode(),
+              attempt,
+              delay);
+          Thread.sleep(delay);
+          attempt++;
+        }
+      }
+    } finally {
+      buffer.release();
+    }
+  }
 
-        byte[] bytes = call.request().body().toString().getBytes(StandardCharsets.UTF_8);
-        out = new ByteArrayOutputStream(bytes.length);
-        gzip = new GZIPOutputStream(out);
-        gzip.write(bytes);
+  /**
+   * Sends the request without blocking the caller. At most Configuration.getMaxInFlightRequests()
+   * requests are in flight at once, beyond that the returned future fails with a
+   * RejectedExecutionException.
+   *
+   * @param body
+   * @param path
+   * @param method
+   * @param create
+   * @param gZip
+   * @return CompletableFuture completed with the response, or exceptionally with an ApiException
+   */
+  public CompletableFuture<ApiResponse<String>> makeRequestAsync(
+      final List body,
+      final String path,
+      final String method,
+      final boolean create,
+      final boolean gZip) {
+    if (!IN_FLIGHT.tryAcquire()) {
+      final CompletableFuture<ApiResponse<String>> rejected = new CompletableFuture<>();
+      rejected.completeExceptionally(
+          new RejectedExecutionException(
+              "The number of in-flight requests exceeds the limit of "
+                  + Configuration.getMaxInFlightRequests()));
+      return rejected;
+    }
+    final PayloadBuffer buffer = encode(body, method);
+    final CompletableFuture<ApiResponse<String>> future =
+        SdkRuntime.track(
+            retryOnFailure(
+                enqueueRequest(buffer, path, method, create, gZip),
+                buffer,
+                path,
+                method,
+                create,
+                gZip,
+                1));
+    future.whenComplete(
+        (response, throwable) -> {
+          IN_FLIGHT.release();
+          buffer.release();
+        });
+    return future;
+  }
 
-      } catch (Exception e) {
-        log.error(e.getMessage());
-      } finally {
-        if (gzip != null) {
-          gzip.flush();
-          gzip.close();
-        }
-        if (out != null) {
-          out.close();
-        }
+  /**
+   * Signs the serialized body and hands it to Transport.executeAsync without applying the
+   * in-flight limit.
+   *
+   * @param buffer serialized body
+   * @param path
+   * @param method
+   * @param create
+   * @param gZip
+   * @return CompletableFuture completed with the response, or exceptionally with an ApiException
+   */
+  private CompletableFuture<ApiResponse<String>> enqueueRequest(
+      final PayloadBuffer buffer,
+      final String path,
+      final String method,
+      final boolean create,
+      final boolean gZip) {
+    final CompletableFuture<ApiResponse<String>> future = new CompletableFuture<>();
+    try {
+      if (!checkNumberOfRequest(path)
+          && !(method.equalsIgnoreCase("PUT") || method.equalsIgnoreCase("PATCH"))) {
+        throw new ApiException("The number of requests exceeds the rate limit");
       }
+      final long start = System.nanoTime();
+      getTransport()
+          .executeAsync(buildRequest(buffer, path, method, create, gZip))
+          .whenComplete(
+              (response, throwable) -> {
+                observe(start, throwable);
+                if (throwable == null) {
+                  future.complete(response);
+                } else {
+                  final ApiException e = toApiException(throwable);
+                  future.completeExceptionally(
+                      new ApiException(
+                          e.getCode() + " " + e.getMessage() + " " + e.getResponseBody(),
+                          e,
+                          e.getCode(),
+                          e.getResponseHeaders(),
+                          e.getResponseBody()));
+                }
+              });
+    } catch (Exception e) {
+      // a request rejected before it was sent says nothing about the server
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Reports the outcome of a request to AdaptiveBatching. Failures other than overloads are left
+   * out, see AdaptiveBatching.isOverload.
+   *
+   * @param start System.nanoTime() when the request was sent
+   * @param failure of the request, null when it succeeded
+   */
+  private void observe(final long start, final Throwable failure) {
+    if (adaptive == null) {
+      return;
     }
-    Type localVarReturnType = new TypeToken<String>() {}.getType();
+    final long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    if (failure == null) {
+      adaptive.onResponse(latencyMillis, false);
+    } else if (AdaptiveBatching.isOverload(toApiException(failure))) {
+      adaptive.onResponse(latencyMillis, true);
+    }
+  }
 
-    ApiResponse<String> syncReponse = null;
+  /**
+   * @param hardLimit payload size the server accepts
+   * @return payload size mergeRequest cuts batches at
+   */
+  protected long payloadLimit(final long hardLimit) {
+    return adaptive == null ? hardLimit : adaptive.payloadLimit(hardLimit);
+  }
+
+  /** @return number of merged requests that trigger a flush */
+  protected int flushThreshold() {
+    return adaptive == null ? Configuration.getFlushThreshold() : adaptive.flushThreshold();
+  }
+
+  /** @return milliseconds a merged request waits at most for its flush */
+  protected long flushInterval() {
+    return adaptive == null ? intervalMillis : adaptive.intervalMillis();
+  }
+
+  /**
+   * Sends the request again when the attempt fails and RetryPolicy allows it. The backoff is waited
+   * out on a scheduler thread, so neither the caller nor the merging of new data is blocked, and
+   * the same serialized body is signed again for every attempt.
+   *
+   * @param attempt future of the attempt just sent
+   * @param buffer serialized body
+   * @param path
+   * @param method
+   * @param create
+   * @param gZip
+   * @param attempts number of attempts made so far, including this one
+   * @return CompletableFuture completed with the response of the last attempt
+   */
+  private CompletableFuture<ApiResponse<String>> retryOnFailure(
+      final CompletableFuture<ApiResponse<String>> attempt,
+      final PayloadBuffer buffer,
+      final String path,
+      final String method,
+      final boolean create,
+      final boolean gZip,
+      final int attempts) {
+    return attempt
+        .handle(
+            (response, throwable) -> {
+              final CompletableFuture<ApiResponse<String>> result = new CompletableFuture<>();
+              if (throwable == null) {
+                RETRY_POLICY.onSuccess();
+                result.complete(response);
+                return result;
+              }
+              final ApiException e = toApiException(throwable);
+              if (!RETRY_POLICY.shouldRetry(e, attempts)) {
+                result.completeExceptionally(e);
+                return result;
+              }
+              final long delay = RETRY_POLICY.delayMillis(e, attempts);
+              log.warn(
+                  "Request to {} failed with {}, retry {} in {} ms",
+                  path,
+                  e.getCode(),
+                  attempts,
+                  delay);
+              SdkRuntime.delay(
+                  () ->
+                      retryOnFailure(
+                              enqueueRequest(buffer, path, method, create, gZip),
+                              buffer,
+                              path,
+                              method,
+                              create,
+                              gZip,
+                              attempts + 1)
+                          .whenComplete(
+                              (retried, failure) -> {
+                                if (failure == null) {
+                                  result.complete(retried);
+                                } else {
+                                  result.completeExceptionally(failure);
+                                }
+                              }),
+                  delay);
+              return result;
+            })
+        .thenCompose(Function.identity());
+  }
+
+  /**
+   * Sends the independent payloads of one flush concurrently, at most
+   * Configuration.getFlushParallelism() at a time: each payload is sent when the first attempt of
+   * an earlier one is answered. Every send also waits for a permit under
+   * Configuration.getMaxInFlightRequests(), shared by all instances. Responses are passed to
+   * responseHandler and failures to the ApiCallback. A flush called directly waits until the first
+   * attempt of every payload is answered unless Configuration.getAsyncRequest() is set, a flush on
+   * an SDK thread never waits, so the merging and the sends of other instances keep their worker
+   * threads.
+   *
+   * @param payloads
+   * @return CompletableFuture completed once every payload is handled, after its last retry
+   */
+  protected CompletableFuture<Void> sendPayloads(final List<Payload> payloads) {
+    final Queue<Payload> pending = new ConcurrentLinkedQueue<>(payloads);
+    final Queue<CompletableFuture<Void>> handled = new ConcurrentLinkedQueue<>();
+    final int parallel = Math.min(Configuration.getFlushParallelism(), payloads.size());
+    final List<CompletableFuture<Void>> lanes = new ArrayList<>(parallel);
+    for (int i = 0; i < parallel; i++) {
+      lanes.add(sendInTurn(pending, handled));
+    }
+    final CompletableFuture<Void> firstAttempts =
+        CompletableFuture.allOf(lanes.toArray(new CompletableFuture[0]));
+    // every payload was taken from pending and put in handled once the lanes are done
+    final CompletableFuture<Void> sent =
+        SdkRuntime.track(
+            firstAttempts.thenCompose(
+                ignored -> CompletableFuture.allOf(handled.toArray(new CompletableFuture[0]))));
+    if (!Configuration.getAsyncRequest() && BACKGROUND_FLUSH.get() == null) {
+      // the flush only waits for the first attempts, retries run in the background
+      firstAttempts.join();
+    }
+    return sent;
+  }
+
+  /**
+   * @param pending payloads of a flush not sent yet
+   * @param handled gets the future of the handling of each payload sent
+   * @return CompletableFuture completed once pending is empty and the first attempt of each
+   *     payload taken from it is answered
+   */
+  private CompletableFuture<Void> sendInTurn(
+      final Queue<Payload> pending, final Queue<CompletableFuture<Void>> handled) {
+    final Payload payload = pending.poll();
+    if (payload == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return sendPayload(payload, 1, handled)
+        .handle((response, throwable) -> null)
+        .thenCompose(ignored -> sendInTurn(pending, handled));
+  }
+
+  /**
+   * Sends one payload of a flush once an in-flight permit is free. The final response goes to
+   * responseHandler and to handleMultiStatus, a final failure to the ApiCallback.
+   *
+   * @param payload
+   * @param attempts number of times the entries of this payload have been sent before, plus one
+   * @param handled gets the future of the handling of the payload, may be null
+   * @return CompletableFuture of the first attempt only
+   */
+  private CompletableFuture<ApiResponse<String>> sendPayload(
+      final Payload payload, final int attempts, final Queue<CompletableFuture<Void>> handled) {
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+    if (handled != null) {
+      handled.add(done);
+    }
+    // counted as outstanding until the response is handled, including a resend it schedules
+    SdkRuntime.track(done);
+    return IN_FLIGHT.acquire().thenCompose(permit -> sendWithPermit(payload, attempts, done));
+  }
+
+  /**
+   * @param payload
+   * @param attempts
+   * @param done completed once the final response or failure is handled
+   * @return CompletableFuture of the first attempt only
+   */
+  private CompletableFuture<ApiResponse<String>> sendWithPermit(
+      final Payload payload, final int attempts, final CompletableFuture<Void> done) {
+    final PayloadBuffer buffer;
+    final CompletableFuture<ApiResponse<String>> first;
+    try {
+      buffer = encode(payload.getBody(), payload.getMethod());
+      first =
+          enqueueRequest(
+              buffer,
+              payload.getPath(),
+              payload.getMethod(),
+              payload.isCreate(),
+              Configuration.getgZip());
+    } catch (RuntimeException e) {
+      IN_FLIGHT.release();
+      done.completeExceptionally(e);
+      throw e;
+    }
+    retryOnFailure(
+            first,
+            buffer,
+            payload.getPath(),
+            payload.getMethod(),
+            payload.isCreate(),
+            Configuration.getgZip(),
+            1)
+        .whenComplete(
+            (response, throwable) -> {
+              buffer.release();
+              IN_FLIGHT.release();
+              try {
+                if (throwable == null) {
+                  responseHandler(response);
+                  handleMultiStatus(response, payload, attempts);
+                } else if (apiCallback != null) {
+                  final ApiException e = toApiException(throwable);
+                  apiCallback.onFailure(e, e.getCode(), e.getResponseHeaders());
+                }
+              } finally {
+                done.complete(null);
+              }
+            });
+    return first;
+  }
+
+  /**
+   * A 207 response means only part of a metrics payload was accepted. Its errors are decoded and
+   * mapped back by resourceIds to the entries they reject. Retryable rejections are sent again on
+   * their own after a backoff. The others are passed to ApiCallback.onFailure, with the error code
+   * and the rejected entries as JSON response body.
+   *
+   * @param response final response of the payload
+   * @param payload
+   * @param attempts number of times the entries of this payload have been sent
+   */
+  protected void handleMultiStatus(
+      final ApiResponse<String> response, final Payload payload, final int attempts) {
+    if (response == null || response.getStatusCode() != 207 || response.getData() == null) {
+      return;
+    }
+    final PushMetricAPIResponseV2 multiStatus;
     try {
-      boolean timeRateLimit = checkNumberOfRequest(path);
-      if (timeRateLimit) {
-        syncReponse = apiClient.execute(call, localVarReturnType);
-      } else if (method.equalsIgnoreCase("PUT") || method.equalsIgnoreCase("PATCH")) {
-        syncReponse = apiClient.execute(call, localVarReturnType);
-      } else {
-        throw new Exception("The number of requests exceeds the rate limit");
+      multiStatus = GSON.fromJson(response.getData(), PushMetricAPIResponseV2.class);
+    } catch (JsonParseException e) {
+      log.warn("Could not decode multi-status response: {}", response.getData(), e);
+      return;
+    }
+    if (multiStatus == null || multiStatus.getErrors() == null) {
+      return;
+    }
+    final List<Object> resend = new ArrayList<>();
+    // an entry rejected by several errors is sent once, entries are the same objects as the body's
+    final Set<Object> resending = Collections.newSetFromMap(new IdentityHashMap<>());
+    ApiException retryable = null;
+    for (final PushMetricErrorResponse error : multiStatus.getErrors()) {
+      final List<Object> rejected = rejectedEntries(payload.getBody(), error.getResourceIds());
+      final int code = error.getCode() == null ? 0 : error.getCode();
+      final ApiException e =
+          new ApiException(error.getMessage(), code, response.getHeaders(), GSON.toJson(rejected));
+      if (!rejected.isEmpty() && RETRY_POLICY.shouldRetry(e, attempts)) {
+        for (final Object entry : rejected) {
+          if (resending.add(entry)) {
+            resend.add(entry);
+          }
+        }
+        retryable = e;
+      } else if (apiCallback != null) {
+        apiCallback.onFailure(e, code, response.getHeaders());
       }
-    } catch (ApiException e) {
-      throw new ApiException(e.getCode() + " " + e.getMessage() + " " + e.getResponseBody());
     }
-    return syncReponse;
+    if (!resend.isEmpty()) {
+      final Payload failed =
+          new Payload(resend, payload.getPath(), payload.getMethod(), payload.isCreate());
+      final long delay = RETRY_POLICY.delayMillis(retryable, attempts);
+      log.warn(
+          "{} of {} entries were rejected, resending them in {} ms",
+          resend.size(),
+          payload.getBody().size(),
+          delay);
+      SdkRuntime.schedule(() -> sendPayload(failed, attempts + 1, null), delay);
+    }
+  }
+
+  /**
+   * @param body entries of a payload
+   * @param resourceIds resourceIds of a PushMetricErrorResponse
+   * @return the RestMetricsV1 entries of the resource
+   */
+  private static List<Object> rejectedEntries(
+      final List body, final Map<String, String> resourceIds) {
+    final List<Object> rejected = new ArrayList<>();
+    if (resourceIds == null || resourceIds.isEmpty()) {
+      return rejected;
+    }
+    for (final Object entry : body) {
+      if (entry instanceof RestMetricsV1
+          && resourceIds.equals(((RestMetricsV1) entry).getResourceIds())) {
+        rejected.add(entry);
+      }
+    }
+    return rejected;
+  }
+
+  /**
+   * Splits the entries of a flush into at most Configuration.getFlushParallelism() contiguous
+   * parts, each holding at least Constant.MINIMUM_ENTRIES_PER_PARALLEL_PAYLOAD entries.
+   *
+   * @param entries
+   * @return parts, empty when there are no entries
+   */
+  protected static <T> List<List<T>> partition(final List<T> entries) {
+    final List<List<T>> parts = new ArrayList<>();
+    if (entries.isEmpty()) {
+      return parts;
+    }
+    final int count =
+        Math.max(
+            1,
+            Math.min(
+                Configuration.getFlushParallelism(),
+                entries.size() / Constant.MINIMUM_ENTRIES_PER_PARALLEL_PAYLOAD));
+    final int size = (entries.size() + count - 1) / count;
+    for (int i = 0; i < entries.size(); i += size) {
+      parts.add(new ArrayList<>(entries.subList(i, Math.min(entries.size(), i + size))));
+    }
+    return parts;
+  }
+
+  /** @return number of requests sent with makeRequestAsync or by a flush, not completed yet */
+  public static int getInFlightRequests() {
+    return IN_FLIGHT.getUsed();
+  }
+
+  /**
+   * Serializes the body once into a pooled buffer. The signer, the debug log and the request body
+   * all read that buffer, also across retries. It is released once the last attempt is answered.
+   *
+   * @param body
+   * @param method
+   * @return buffer holding the JSON
+   */
+  @SneakyThrows
+  protected PayloadBuffer encode(final List body, final String method) {
+    /*We need this as we are using "okhttp3" so body with patch and put is not executed properly, so body.get(0) i.e. object for the same is send.
+    when we are sending list as a body for PATCH and PUT it gives "bad request" as internally we have serialisation for body (in okhttp3) for which body is not formed correctly.*/
+    final Object payload =
+        (method.equalsIgnoreCase("PUT") || method.equalsIgnoreCase("PATCH")) ? body.get(0) : body;
+    final PayloadBuffer buffer = PayloadBuffer.acquire();
+    final Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+    GSON.toJson(payload, writer);
+    writer.flush();
+    // decoded only when debug is enabled
+    log.debug("Request: {}", buffer);
+    return buffer;
+  }
+
+  /**
+   * Signs the serialized body.
+   *
+   * @param buffer serialized body
+   * @param path
+   * @param method
+   * @param create
+   * @param gZip
+   * @return request ready to be handed to the Transport
+   */
+  protected TransportRequest buildRequest(
+      final PayloadBuffer buffer,
+      final String path,
+      final String method,
+      final boolean create,
+      final boolean gZip) {
+    final Map<String, String> headersParams = new HashMap<>();
+    headersParams.put("Accept", "application/json");
+    headersParams.put("Content-Type", "application/json");
+    headersParams.put(
+        "User-Agent",
+        ApiClientUserAgent.getUserAgent(getUserAgentSuffix(System.getenv("APPLICATION_NAME"))));
+    headersParams.put(
+        "Authorization", Configuration.getAuthToken(buffer.array(), buffer.size(), method, path));
+
+    String url = Configuration.setCompany() + path;
+    if (create && path == PATH) {
+      url = url + "?create=true";
+    }
+    return TransportRequest.builder()
+        .method(method)
+        .url(url)
+        .headers(headersParams)
+        .body(buffer.array())
+        .bodyLength(buffer.size())
+        .gzip(gZip)
+        .compressionLevel(Configuration.getGzipCompressionLevel())
+        .build();
+  }
+
+  /** A request body of a flush together with the endpoint it is sent to. */
+  @Getter
+  @AllArgsConstructor
+  protected static class Payload {
+    private final List body;
+    private final String path;
+    private final String method;
+    private final boolean create;
+  }
+
+  /**
+   * @param throwable failure of a future returned by makeRequestAsync
+   * @return the ApiException behind the failure
+   */
+  protected static ApiException toApiException(Throwable throwable) {
+    Throwable cause = throwable;
+    while (cause instanceof CompletionException && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    if (cause instanceof ApiException) {
+      return (ApiException) cause;
+    }
+    return new ApiException(cause);
+  }
+
+  /** @return Transport set on this instance, Configuration.getTransport() otherwise */
+  public Transport getTransport() {
+    if (transport != null) {
+      return transport;
+    }
+    return Configuration.getTransport();
+  }
+
+  /**
+   * Sends the requests of this instance through the OkHttp client of the given ApiClient.
+   *
+   * @param apiClient
+   */
+  public void setApiClient(ApiClient apiClient) {
+    setTransport(new OkHttpTransport(apiClient));
   }
 
   /** @return queue. */
@@ -293,19 +1156,49 @@ public abstract class BatchingCache {
     return rawRequest;
   }
 
-  /** Initialising Multithreading. */
+  /**
+   * Warms the connections of the Transport when Configuration.getPrewarmConnections() is set. The
+   * warm-up runs in the background, its duration is logged and available from getWarmUp().
+   */
+  private void checkWarmUp() {
+    if (!Configuration.getPrewarmConnections() || Configuration.getCompany() == null) {
+      return;
+    }
+    final String url = Configuration.setCompany();
+    final int connections =
+        Math.min(Configuration.getFlushParallelism(), Configuration.getConnectionPoolMaxsize());
+    warmUp = getTransport().warmUp(url, connections);
+    warmUp.whenComplete(
+        (duration, throwable) -> {
+          if (throwable == null) {
+            log.info("Connection warm-up to {} took {} ms", url, duration.toMillis());
+          } else {
+            log.warn("Connection warm-up to {} failed", url, throwable);
+          }
+        });
+  }
+
+  /** Starts the BatchScheduler, it uses no thread time until requests are added. */
   private void checkBatch() {
     if (batch) {
-      mergeThread = new Thread(this::commonMergeRequest);
-      mergeThread.setDaemon(true);
-      mergeThread.start();
-
-      requestThread = new Thread(this::commonDoRequest);
-      requestThread.setDaemon(true);
-      requestThread.start();
+      limiter = new BufferLimiter();
+      if (Configuration.getAdaptiveBatching()) {
+        adaptive = new AdaptiveBatching(intervalMillis);
+      }
+      startScheduler();
     }
   }
 
+  /** Merges and flushes this cache on SdkRuntime.tasks() from now on. */
+  private void startScheduler() {
+    scheduler =
+        new BatchScheduler(
+            this::commonMergeRequest,
+            inBackground(this::commonDoRequest),
+            this::flushInterval,
+            this::flushThreshold);
+  }
+
   /**
    * This method is used to check time based rate Limit.
    *
@@ -313,27 +1206,29 @@ public abstract class BatchingCache {
    * @return boolean
    */
   public boolean checkNumberOfRequest(String path) {
-    long endTime = System.currentTimeMillis();
-    long differenceInMinute = (((endTime - startTime) / (1000 * 60)) % 60);
-    if (differenceInMinute < 1
-        && path.contains("metric/ingest")
-        && metricsCounter <= Configuration.getRequestPerMinute()) {
-      metricsCounter++;
-      return true;
-    }
-    if (differenceInMinute < 1
-        && path.contains("log/ingest")
-        && logCounter <= Configuration.getRequestPerMinute()) {
-      logCounter++;
-      return true;
-    }
-    if (differenceInMinute >= 1) {
-      startTime = System.currentTimeMillis();
-      metricsCounter = 1;
-      logCounter = 1;
-      return true;
+    synchronized (BatchingCache.class) {
+      long endTime = System.currentTimeMillis();
+      long differenceInMinute = (((endTime - startTime) / (1000 * 60)) % 60);
+      if (differenceInMinute < 1
+          && path.contains("metric/ingest")
+          && metricsCounter <= Configuration.getRequestPerMinute()) {
+        metricsCounter++;
+        return true;
+      }
+      if (differenceInMinute < 1
+          && path.contains("log/ingest")
+          && logCounter <= Configuration.getRequestPerMinute()) {
+        logCounter++;
+        return true;
+      }
+      if (differenceInMinute >= 1) {
+        startTime = System.currentTimeMillis();
+        metricsCounter = 1;
+        logCounter = 1;
+        return true;
+      }
+      return false;
     }
-    return false;
   }
 
   /**
@@ -347,10 +1242,6 @@ public abstract class BatchingCache {
   }
 
   public String getUserAgentSuffix(String userAgentSuffix) {
-    String applicationName = "";
-    if (userAgentSuffix != null && userAgentSuffix.length() <= 32) {
-      applicationName = "/" + userAgentSuffix;
-    }
-    return applicationName;
+    return ApiClientUserAgent.getUserAgentSuffix(userAgentSuffix);
   }
 }
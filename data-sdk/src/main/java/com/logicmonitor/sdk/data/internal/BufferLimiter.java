@@ -0,0 +1,133 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This Class counts the requests held by a batching pipeline against
+ * Configuration.getBufferCapacity(). A slot is acquired when a request is added and released when
+ * the cache holding it is flushed.
+ *
+ * <p>Waiting uses a ReentrantLock rather than a monitor, so a virtual thread blocked by
+ * OverflowPolicy.BLOCK releases its carrier thread.
+ */
+public class BufferLimiter {
+
+  private final AtomicInteger buffered = new AtomicInteger();
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition released = lock.newCondition();
+
+  /** Run after slots were released, see addReleaseListener. */
+  private final CopyOnWriteArrayList<Runnable> releaseListeners = new CopyOnWriteArrayList<>();
+
+  /** Threads waiting in acquire(long), release only notifies when there are any. */
+  private volatile int waiters;
+
+  /** @return true when a slot was free and is now taken */
+  public boolean tryAcquire() {
+    final int capacity = Configuration.getBufferCapacity();
+    for (; ; ) {
+      final int current = buffered.get();
+      if (current >= capacity) {
+        return false;
+      }
+      if (buffered.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Takes a slot with a probability of 1 while the buffer is less than half full, falling linearly
+   * to 0 when it is full.
+   *
+   * @return true when the request is admitted and a slot taken
+   */
+  public boolean tryAcquireSampled() {
+    final int capacity = Configuration.getBufferCapacity();
+    final int highWatermark = capacity / 2;
+    final int current = buffered.get();
+    if (current >= highWatermark) {
+      final double admit = (double) (capacity - current) / (capacity - highWatermark);
+      if (ThreadLocalRandom.current().nextDouble() >= admit) {
+        return false;
+      }
+    }
+    return tryAcquire();
+  }
+
+  /**
+   * @param timeoutMillis longest time to wait for a flush to release a slot
+   * @return true when a slot was taken before the timeout
+   * @throws InterruptedException
+   */
+  public boolean acquire(final long timeoutMillis) throws InterruptedException {
+    if (tryAcquire()) {
+      return true;
+    }
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    lock.lock();
+    try {
+      waiters++;
+      while (!tryAcquire()) {
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        released.awaitNanos(remaining);
+      }
+      return true;
+    } finally {
+      waiters--;
+      lock.unlock();
+    }
+  }
+
+  /** @param slots number of requests that left the pipeline */
+  public void release(final int slots) {
+    if (slots <= 0) {
+      return;
+    }
+    buffered.addAndGet(-slots);
+    for (final Runnable listener : releaseListeners) {
+      listener.run();
+    }
+    if (waiters > 0) {
+      lock.lock();
+      try {
+        released.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /** @param listener run on the releasing thread whenever slots are released */
+  public void addReleaseListener(final Runnable listener) {
+    releaseListeners.add(listener);
+  }
+
+  /** @param listener added with addReleaseListener */
+  public void removeReleaseListener(final Runnable listener) {
+    releaseListeners.remove(listener);
+  }
+
+  /** @return number of slots taken */
+  public int getBuffered() {
+    return buffered.get();
+  }
+}
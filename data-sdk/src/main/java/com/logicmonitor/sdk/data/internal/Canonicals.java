@@ -0,0 +1,208 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.model.DataPoint;
+import com.logicmonitor.sdk.data.model.DataSource;
+import com.logicmonitor.sdk.data.model.DataSourceInstance;
+import com.logicmonitor.sdk.data.model.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This Class maps resources, datasources, instances and data points to one canonical copy per
+ * value, so descriptors built afresh for every send still land on the same payload cache entry.
+ * The model classes have no equals or hashCode and stay mutable, so the copies are looked up by a
+ * key of their field values with the hash computed once; their maps are unmodifiable. Not thread
+ * safe, used under the cache lock.
+ */
+public class Canonicals {
+
+  private final Map<Key, Object> known = new HashMap<>();
+
+  /**
+   * @param resource
+   * @return the canonical copy of resource, null for null
+   */
+  public Resource resource(final Resource resource) {
+    if (resource == null) {
+      return null;
+    }
+    final Object found = known.get(key(resource));
+    if (found != null) {
+      return (Resource) found;
+    }
+    final Resource copy =
+        Resource.builder()
+            .ids(copy(resource.getIds()))
+            .name(resource.getName())
+            .description(resource.getDescription())
+            .properties(copy(resource.getProperties()))
+            .create(resource.isCreate())
+            .build();
+    known.put(key(copy), copy);
+    return copy;
+  }
+
+  /**
+   * @param dataSource
+   * @return the canonical copy of dataSource, null for null
+   */
+  public DataSource dataSource(final DataSource dataSource) {
+    if (dataSource == null) {
+      return null;
+    }
+    final Object found = known.get(key(dataSource));
+    if (found != null) {
+      return (DataSource) found;
+    }
+    final DataSource copy =
+        DataSource.builder()
+            .name(dataSource.getName())
+            .displayName(dataSource.getDisplayName())
+            .group(dataSource.getGroup())
+            .id(dataSource.getId())
+            .singleInstanceDS(dataSource.getSingleInstanceDS())
+            .build();
+    known.put(key(copy), copy);
+    return copy;
+  }
+
+  /**
+   * @param instance
+   * @return the canonical copy of instance, null for null
+   */
+  public DataSourceInstance instance(final DataSourceInstance instance) {
+    if (instance == null) {
+      return null;
+    }
+    final Object found = known.get(key(instance));
+    if (found != null) {
+      return (DataSourceInstance) found;
+    }
+    final DataSourceInstance copy =
+        DataSourceInstance.builder()
+            .name(instance.getName())
+            .description(instance.getDescription())
+            .displayName(instance.getDisplayName())
+            .properties(copy(instance.getProperties()))
+            .id(instance.getId())
+            .build();
+    known.put(key(copy), copy);
+    return copy;
+  }
+
+  /**
+   * @param dataPoint
+   * @return the canonical copy of dataPoint, null for null
+   */
+  public DataPoint dataPoint(final DataPoint dataPoint) {
+    if (dataPoint == null) {
+      return null;
+    }
+    final Object found = known.get(key(dataPoint));
+    if (found != null) {
+      return (DataPoint) found;
+    }
+    final DataPoint copy =
+        DataPoint.builder()
+            .aggregationType(dataPoint.getAggregationType())
+            .type(dataPoint.getType())
+            .name(dataPoint.getName())
+            .description(dataPoint.getDescription())
+            .percentileValue(dataPoint.getPercentileValue())
+            .build();
+    known.put(key(copy), copy);
+    return copy;
+  }
+
+  /** @return number of canonical copies */
+  public int size() {
+    return known.size();
+  }
+
+  /** Forgets every canonical copy, entries already cached keep theirs. */
+  public void clear() {
+    known.clear();
+  }
+
+  private static Key key(final Resource resource) {
+    return new Key(
+        Resource.class,
+        resource.getIds(),
+        resource.getName(),
+        resource.getDescription(),
+        resource.getProperties(),
+        resource.isCreate());
+  }
+
+  private static Key key(final DataSource dataSource) {
+    return new Key(
+        DataSource.class,
+        dataSource.getName(),
+        dataSource.getDisplayName(),
+        dataSource.getGroup(),
+        dataSource.getId(),
+        dataSource.getSingleInstanceDS());
+  }
+
+  private static Key key(final DataSourceInstance instance) {
+    return new Key(
+        DataSourceInstance.class,
+        instance.getName(),
+        instance.getDescription(),
+        instance.getDisplayName(),
+        instance.getProperties(),
+        instance.getId());
+  }
+
+  private static Key key(final DataPoint dataPoint) {
+    return new Key(
+        DataPoint.class,
+        dataPoint.getAggregationType(),
+        dataPoint.getType(),
+        dataPoint.getName(),
+        dataPoint.getDescription(),
+        dataPoint.getPercentileValue());
+  }
+
+  private static Map<String, String> copy(final Map<String, String> map) {
+    return map == null ? null : Collections.unmodifiableMap(new HashMap<>(map));
+  }
+
+  /** Field values of a descriptor, led by its class, with the hash computed once. */
+  private static final class Key {
+
+    private final Object[] fields;
+    private final int hash;
+
+    private Key(final Object... fields) {
+      this.fields = fields;
+      this.hash = Arrays.hashCode(fields);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      final Key key = (Key) other;
+      return hash == key.hash && Arrays.equals(fields, key.fields);
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.model.Input;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This Class is the subscriber side of a push stream into a BatchingCache, shared by the Flow and
+ * the Reactive Streams subscribers. It requests as many items as BatchingCache.demandCredit()
+ * allows, that is in proportion to the free buffer capacity and the free in-flight budget, and
+ * requests more once half of the outstanding demand has been delivered or capacity is released.
+ *
+ * @param <T> type of the items, MetricsInput or LogsInput
+ */
+@Slf4j
+public class DemandSink<T extends Input> {
+
+  /** Delay before the credit is checked again while nothing is requested and none is free. */
+  static final long STALL_RECHECK_MILLIS = 100;
+
+  private final BatchingCache cache;
+  private final Runnable releaseListener = this::wake;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+  private final AtomicBoolean recheckScheduled = new AtomicBoolean();
+
+  /** Items requested from upstream and not delivered yet. */
+  private final AtomicLong outstanding = new AtomicLong();
+
+  private volatile LongConsumer request;
+  private volatile Runnable cancel;
+  private volatile boolean done;
+
+  /** @param cache cache the items are handed to */
+  public DemandSink(final BatchingCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * @param request requests more items from upstream
+   * @param cancel cancels the upstream subscription
+   * @return false when the sink was subscribed before, the new subscription must be cancelled
+   */
+  public boolean onSubscribe(final LongConsumer request, final Runnable cancel) {
+    if (!subscribed.compareAndSet(false, true)) {
+      return false;
+    }
+    this.request = request;
+    this.cancel = cancel;
+    final BufferLimiter limiter = cache.getLimiter();
+    if (limiter != null) {
+      limiter.addReleaseListener(releaseListener);
+    }
+    replenish();
+    return true;
+  }
+
+  /** @param item next item, handed to the cache */
+  public void onNext(final T item) {
+    outstanding.decrementAndGet();
+    if (done) {
+      return;
+    }
+    try {
+      final CompletableFuture<?> submitted = cache.submit(item);
+      if (!submitted.isDone()) {
+        submitted.whenComplete((response, throwable) -> wake());
+      }
+    } catch (RuntimeException e) {
+      // an invalid item must not end the stream
+      log.warn("Item rejected: {}", e.getMessage());
+    }
+    replenish();
+  }
+
+  /** @param throwable failure that ended the upstream */
+  public void onError(final Throwable throwable) {
+    log.error("Upstream failed: ", throwable);
+    terminate();
+  }
+
+  public void onComplete() {
+    terminate();
+  }
+
+  /** Cancels the upstream subscription, items already delivered are still sent. */
+  public void cancel() {
+    final Runnable current = cancel;
+    terminate();
+    if (current != null) {
+      current.run();
+    }
+  }
+
+  /** @return number of items requested from upstream and not delivered yet */
+  public long getOutstanding() {
+    return outstanding.get();
+  }
+
+  /**
+   * Requests the credit not covered by outstanding demand, unless more than half of the credit is
+   * still outstanding. Without credit and demand the credit is checked again after a delay, in case
+   * capacity was freed without a release the sink is told about.
+   */
+  void replenish() {
+    final LongConsumer current = request;
+    if (done || current == null) {
+      return;
+    }
+    final long credit = cache.demandCredit();
+    for (; ; ) {
+      final long requested = outstanding.get();
+      if (credit <= 0 || requested > credit / 2) {
+        if (credit <= 0 && requested <= 0) {
+          scheduleRecheck();
+        }
+        return;
+      }
+      if (outstanding.compareAndSet(requested, credit)) {
+        current.accept(credit - requested);
+        return;
+      }
+    }
+  }
+
+  /** Replenishes off the thread that freed capacity, which may be flushing the cache. */
+  private void wake() {
+    if (!done) {
+      SdkRuntime.tasks().execute(this::replenish);
+    }
+  }
+
+  private void scheduleRecheck() {
+    if (recheckScheduled.compareAndSet(false, true)) {
+      SdkRuntime.delay(
+          () -> {
+            recheckScheduled.set(false);
+            replenish();
+          },
+          STALL_RECHECK_MILLIS);
+    }
+  }
+
+  private void terminate() {
+    done = true;
+    final BufferLimiter limiter = cache.getLimiter();
+    if (limiter != null) {
+      limiter.removeReleaseListener(releaseListener);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * This Class is a RequestBody which gzips the serialized JSON while it is written to the socket, so
+ * the compressed payload is never held in memory as a whole.
+ */
+public class GzipRequestBody extends RequestBody {
+
+  private static final MediaType JSON = MediaType.parse("application/json");
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final byte[] content;
+  private final int length;
+  private final int level;
+
+  /**
+   * @param content buffer holding the serialized JSON
+   * @param length number of bytes of content to send
+   * @param level Deflater compression level, -1 (default) or 0-9
+   */
+  public GzipRequestBody(final byte[] content, final int length, final int level) {
+    if (level != Deflater.DEFAULT_COMPRESSION
+        && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+      throw new IllegalArgumentException("Invalid compression level " + level);
+    }
+    this.content = content;
+    this.length = length;
+    this.level = level;
+  }
+
+  /**
+   * Writes the gzip stream of the content to out, out is not closed.
+   *
+   * @param content
+   * @param level Deflater compression level
+   * @param out
+   * @throws IOException
+   */
+  public static void gzip(final byte[] content, final int level, final OutputStream out)
+      throws IOException {
+    gzip(content, content.length, level, out);
+  }
+
+  /**
+   * Writes the gzip stream of the first length bytes of content to out, out is not closed.
+   *
+   * @param content
+   * @param length
+   * @param level Deflater compression level
+   * @param out
+   * @throws IOException
+   */
+  public static void gzip(
+      final byte[] content, final int length, final int level, final OutputStream out)
+      throws IOException {
+    final LevelGZIPOutputStream gzip = new LevelGZIPOutputStream(out, level);
+    try {
+      gzip.write(content, 0, length);
+      gzip.finish();
+    } finally {
+      gzip.release();
+    }
+  }
+
+  @Override
+  public MediaType contentType() {
+    return JSON;
+  }
+
+  /** @return -1 as the compressed length is only known once written, the body is sent chunked */
+  @Override
+  public long contentLength() {
+    return -1;
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    // the sink belongs to OkHttp, gzip only finishes the stream
+    gzip(content, length, level, sink.outputStream());
+  }
+
+  /** GZIPOutputStream with a configurable compression level. */
+  private static class LevelGZIPOutputStream extends GZIPOutputStream {
+
+    LevelGZIPOutputStream(final OutputStream out, final int level) throws IOException {
+      super(out, BUFFER_SIZE);
+      def.setLevel(level);
+    }
+
+    /** Frees the native Deflater without closing the underlying stream. */
+    void release() {
+      def.end();
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.google.gson.Gson;
+import com.logicmonitor.sdk.data.Configuration;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * This Class computes how many bytes values take in a payload, as the Gson of BatchingCache.encode
+ * writes them in UTF-8: null members are left out and strings are escaped HTML safe. Sizes of
+ * Strings and Maps of Strings are counted without encoding them, so the batching caches can keep
+ * the size of their payload up to date as records are merged.
+ */
+public final class JsonSize {
+
+  private static final Gson GSON = new Gson();
+
+  /** Bytes of a character escaped as a unicode escape. */
+  private static final int UNICODE_ESCAPE = 6;
+
+  /** Escaped by Gson, JavaScript reads them as line breaks. */
+  private static final char LINE_SEPARATOR = 0x2028;
+
+  private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+  private static final int NULL_NAME = 6;
+
+  private JsonSize() {}
+
+  /**
+   * @param value
+   * @return bytes of value as a quoted JSON string, or of null
+   */
+  public static int string(final String value) {
+    if (value == null) {
+      return 4;
+    }
+    int size = 2;
+    final int length = value.length();
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c < 0x80) {
+        size += ascii(c);
+      } else if (c < 0x800) {
+        size += 2;
+      } else if (c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR) {
+        size += UNICODE_ESCAPE;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < length
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        size += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        // a lone surrogate is replaced by '?'
+        size += 1;
+      } else {
+        size += 3;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @param name
+   * @param value
+   * @return bytes of the member "name":"value" of an object, 0 for a null value which is left out
+   */
+  public static int member(final String name, final String value) {
+    if (value == null) {
+      return 0;
+    }
+    // a null name is written as "null"
+    return (name == null ? NULL_NAME : string(name)) + 1 + string(value);
+  }
+
+  /**
+   * @param map
+   * @return bytes of map as a JSON object, or of null
+   */
+  public static long map(final Map<String, String> map) {
+    if (map == null) {
+      return 4;
+    }
+    long size = 2;
+    int members = 0;
+    for (final Map.Entry<String, String> entry : map.entrySet()) {
+      if (entry.getValue() != null) {
+        size += member(entry.getKey(), entry.getValue());
+        members++;
+      }
+    }
+    return size + Math.max(0, members - 1);
+  }
+
+  /**
+   * Encodes value, for sizes computed once rather than per record.
+   *
+   * @param value
+   * @return bytes of value encoded
+   */
+  public static long of(final Object value) {
+    return GSON.toJson(value).getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  /**
+   * Encodes and compresses value at Configuration.getGzipCompressionLevel().
+   *
+   * @param value
+   * @return compressed bytes per encoded byte
+   * @throws IOException
+   */
+  public static double compressionRatio(final Object value) throws IOException {
+    final byte[] json = GSON.toJson(value).getBytes(StandardCharsets.UTF_8);
+    final CountingStream counter = new CountingStream();
+    GzipRequestBody.gzip(json, Configuration.getGzipCompressionLevel(), counter);
+    return json.length == 0 ? 1 : (double) counter.count / json.length;
+  }
+
+  private static int ascii(final char c) {
+    switch (c) {
+      case '"':
+      case '\\':
+      case '\t':
+      case '\b':
+      case '\n':
+      case '\r':
+      case '\f':
+        return 2;
+      case '<':
+      case '>':
+      case '&':
+      case '=':
+      case '\'':
+        return UNICODE_ESCAPE;
+      default:
+        return c < 0x20 ? UNICODE_ESCAPE : 1;
+    }
+  }
+
+  /** Counts the bytes written to it and drops them. */
+  private static final class CountingStream extends OutputStream {
+
+    private long count;
+
+    @Override
+    public void write(final int b) {
+      count++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+      count += len;
+    }
+  }
+}
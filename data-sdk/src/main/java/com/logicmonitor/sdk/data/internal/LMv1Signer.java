@@ -0,0 +1,101 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * This Class computes LMv1 signatures. The body bytes are streamed through Mac.update instead of
+ * being concatenated into a String, and every thread keeps its initialized Mac, so signing costs
+ * one pass over the body and no per-request key setup.
+ */
+public final class LMv1Signer {
+
+  private static final String ALGORITHM = "HmacSHA256";
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private static final ThreadLocal<KeyedMac> MAC = new ThreadLocal<>();
+
+  private LMv1Signer() {}
+
+  /**
+   * @param accessId
+   * @param accessKey
+   * @param method
+   * @param epoch milliseconds since the epoch, sent with the token
+   * @param body buffer holding the serialized body, may be null
+   * @param length number of bytes of body to sign
+   * @param resourcePath
+   * @return Authorization header value
+   */
+  public static String sign(
+      final String accessId,
+      final String accessKey,
+      final String method,
+      final long epoch,
+      final byte[] body,
+      final int length,
+      final String resourcePath) {
+    final Mac mac = mac(accessKey);
+    mac.update((method + epoch).getBytes(StandardCharsets.UTF_8));
+    if (body != null) {
+      mac.update(body, 0, length);
+    }
+    mac.update(resourcePath.getBytes(StandardCharsets.UTF_8));
+    final String signature = Base64.getEncoder().encodeToString(hex(mac.doFinal()));
+    return "LMv1 " + accessId + ":" + signature + ":" + epoch;
+  }
+
+  /**
+   * @param data
+   * @return lower case hex digits of data, as ASCII bytes
+   */
+  public static byte[] hex(final byte[] data) {
+    final byte[] hex = new byte[data.length * 2];
+    for (int i = 0; i < data.length; i++) {
+      hex[2 * i] = HEX[(data[i] >>> 4) & 0xf];
+      hex[2 * i + 1] = HEX[data[i] & 0xf];
+    }
+    return hex;
+  }
+
+  /** @return Mac of the current thread, initialized with accessKey and ready for update */
+  private static Mac mac(final String accessKey) {
+    KeyedMac keyed = MAC.get();
+    if (keyed == null || !keyed.accessKey.equals(accessKey)) {
+      try {
+        final Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(new SecretKeySpec(accessKey.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+        keyed = new KeyedMac(accessKey, mac);
+      } catch (GeneralSecurityException e) {
+        throw new RuntimeException("Invalid key exception while converting to HMac SHA256", e);
+      }
+      MAC.set(keyed);
+    } else {
+      // discards anything left by a signature that failed half way
+      keyed.mac.reset();
+    }
+    return keyed.mac;
+  }
+
+  /** A Mac together with the key it was initialized with. */
+  private static final class KeyedMac {
+    private final String accessKey;
+    private final Mac mac;
+
+    private KeyedMac(final String accessKey, final Mac mac) {
+      this.accessKey = accessKey;
+      this.mac = mac;
+    }
+  }
+}
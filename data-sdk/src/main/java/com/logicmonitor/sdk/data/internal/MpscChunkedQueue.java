@@ -0,0 +1,176 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * This Class is an unbounded lock-free queue for many producers and a single consumer. Elements
+ * are stored in linked array chunks: a producer claims a slot with one atomic increment and writes
+ * the element into it, so only one chunk is allocated per CHUNK_SIZE elements instead of a node per
+ * element.
+ *
+ * <p>offer may be called from any thread. poll, peek, size, isEmpty and iterator must only be
+ * called by one thread at a time, BatchingCache guards them with its queueLock.
+ *
+ * @param <E> element type
+ */
+public class MpscChunkedQueue<E> extends AbstractQueue<E> {
+
+  static final int CHUNK_SIZE = 1024;
+
+  private static final AtomicReferenceFieldUpdater<MpscChunkedQueue, Chunk> TAIL =
+      AtomicReferenceFieldUpdater.newUpdater(MpscChunkedQueue.class, Chunk.class, "tail");
+
+  /** Chunk producers claim slots in, may lag behind the last chunk for a moment. */
+  private volatile Chunk<E> tail;
+
+  /** Chunk the consumer reads from, consumer only. */
+  private Chunk<E> head;
+
+  /** Next slot of head to read, consumer only. */
+  private int headIndex;
+
+  public MpscChunkedQueue() {
+    head = new Chunk<>();
+    tail = head;
+  }
+
+  /**
+   * @param e
+   * @return true, the queue is unbounded
+   */
+  @Override
+  public boolean offer(final E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    for (; ; ) {
+      final Chunk<E> chunk = tail;
+      final int index = Chunk.CLAIMED.getAndIncrement(chunk);
+      if (index < CHUNK_SIZE) {
+        chunk.slots.lazySet(index, e);
+        return true;
+      }
+      // chunk is full, link a new one unless another producer already did and move the tail
+      Chunk<E> next = chunk.next;
+      if (next == null) {
+        final Chunk<E> created = new Chunk<>();
+        next = Chunk.NEXT.compareAndSet(chunk, null, created) ? created : chunk.next;
+      }
+      TAIL.compareAndSet(this, chunk, next);
+    }
+  }
+
+  @Override
+  public E poll() {
+    final E e = peek();
+    if (e != null) {
+      head.slots.lazySet(headIndex, null);
+      headIndex++;
+    }
+    return e;
+  }
+
+  @Override
+  public E peek() {
+    for (; ; ) {
+      if (headIndex < CHUNK_SIZE) {
+        if (headIndex >= Math.min(head.claimed, CHUNK_SIZE)) {
+          return null;
+        }
+        return await(head, headIndex);
+      }
+      final Chunk<E> next = head.next;
+      if (next == null) {
+        return null;
+      }
+      head = next;
+      headIndex = 0;
+    }
+  }
+
+  /** @return number of elements, elements offered concurrently may or may not be counted */
+  @Override
+  public int size() {
+    long size = 0;
+    int from = headIndex;
+    for (Chunk<E> chunk = head; chunk != null; chunk = chunk.next) {
+      size += Math.max(0, Math.min(chunk.claimed, CHUNK_SIZE) - from);
+      from = 0;
+    }
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return peek() == null;
+  }
+
+  /** @return read-only iterator over the elements, in consumer order */
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private Chunk<E> chunk = head;
+      private int index = headIndex;
+
+      @Override
+      public boolean hasNext() {
+        for (; ; ) {
+          if (index < Math.min(chunk.claimed, CHUNK_SIZE)) {
+            return true;
+          }
+          if (index < CHUNK_SIZE || chunk.next == null) {
+            return false;
+          }
+          chunk = chunk.next;
+          index = 0;
+        }
+      }
+
+      @Override
+      public E next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return await(chunk, index++);
+      }
+    };
+  }
+
+  /** Waits for the producer that claimed the slot to publish its element. */
+  private static <E> E await(final Chunk<E> chunk, final int index) {
+    E e;
+    while ((e = chunk.slots.get(index)) == null) {
+      Thread.yield();
+    }
+    return e;
+  }
+
+  /** Fixed array of slots and the number of slots claimed so far. */
+  private static final class Chunk<E> {
+
+    private static final AtomicIntegerFieldUpdater<Chunk> CLAIMED =
+        AtomicIntegerFieldUpdater.newUpdater(Chunk.class, "claimed");
+
+    private static final AtomicReferenceFieldUpdater<Chunk, Chunk> NEXT =
+        AtomicReferenceFieldUpdater.newUpdater(Chunk.class, Chunk.class, "next");
+
+    private final AtomicReferenceArray<E> slots = new AtomicReferenceArray<>(CHUNK_SIZE);
+
+    /** Grows past CHUNK_SIZE when producers race for the last slot, those claims are retried. */
+    private volatile int claimed;
+
+    private volatile Chunk<E> next;
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.model.LogsInput;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * This Class stages the records of a batching cache in a direct ByteBuffer outside the Java heap,
+ * until the cache is flushed and the records are read back to be encoded as JSON. A stage holds
+ * either metric samples, of SAMPLE_BYTES each, or logs.
+ *
+ * <p>A log is laid out as its message, log level, timestamp, resource ids and metadata. A String
+ * is its UTF-8 length as an int followed by the bytes, a Map its size as an int followed by the
+ * keys and values, -1 standing for null. Records are written under the cache lock and read once
+ * the stage is detached from the cache, never both at the same time.
+ */
+public class OffHeapStage {
+
+  /** Bytes of a sample: cache entry, epoch seconds, value and whether the value is a decimal. */
+  public static final int SAMPLE_BYTES = Integer.BYTES + Long.BYTES + Double.BYTES + 1;
+
+  private static final int NULL = -1;
+
+  /** Its Buffer methods are called through Buffer, the ByteBuffer overrides are not on Java 8. */
+  private final ByteBuffer buffer;
+
+  private final CharsetEncoder encoder =
+      StandardCharsets.UTF_8
+          .newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  private int records;
+
+  /** @param capacity bytes allocated outside the heap */
+  public OffHeapStage(final int capacity) {
+    buffer = ByteBuffer.allocateDirect(capacity);
+  }
+
+  /** Handles a sample read back from the stage. */
+  public interface SampleHandler {
+
+    /**
+     * @param entry number of the cache entry given to putSample
+     * @param epochSeconds
+     * @param value
+     * @param decimal whether the value was given as "10.0" rather than "10"
+     */
+    void accept(int entry, long epochSeconds, double value, boolean decimal);
+  }
+
+  /**
+   * @param entry number of the cache entry the sample belongs to
+   * @param epochSeconds
+   * @param value
+   * @param decimal whether the value was given as "10.0" rather than "10"
+   * @return false when the stage is full
+   */
+  public boolean putSample(
+      final int entry, final long epochSeconds, final double value, final boolean decimal) {
+    if (buffer.remaining() < SAMPLE_BYTES) {
+      return false;
+    }
+    buffer.putInt(entry);
+    buffer.putLong(epochSeconds);
+    buffer.putDouble(value);
+    buffer.put((byte) (decimal ? 1 : 0));
+    records++;
+    return true;
+  }
+
+  /**
+   * @param message
+   * @param logLevel
+   * @param resourceId
+   * @param timeStamp
+   * @param metadata
+   * @return false when the log does not fit into the stage, nothing is written then
+   */
+  public boolean putLog(
+      final String message,
+      final String logLevel,
+      final Map<String, String> resourceId,
+      final String timeStamp,
+      final Map<String, String> metadata) {
+    final int start = buffer.position();
+    if (putString(message)
+        && putString(logLevel)
+        && putMap(resourceId)
+        && putString(timeStamp)
+        && putMap(metadata)) {
+      records++;
+      return true;
+    }
+    ((Buffer) buffer).position(start);
+    return false;
+  }
+
+  /** @param handler called with every sample in the order they were put */
+  public void forEachSample(final SampleHandler handler) {
+    final ByteBuffer reader = reader();
+    for (int i = 0; i < records; i++) {
+      handler.accept(reader.getInt(), reader.getLong(), reader.getDouble(), reader.get() != 0);
+    }
+  }
+
+  /** @param handler called with every log in the order they were put */
+  public void forEachLog(final Consumer<LogsInput> handler) {
+    final ByteBuffer reader = reader();
+    for (int i = 0; i < records; i++) {
+      final String message = getString(reader);
+      final String logLevel = getString(reader);
+      final Map<String, String> resourceId = getMap(reader);
+      final String timeStamp = getString(reader);
+      final Map<String, String> metadata = getMap(reader);
+      handler.accept(new LogsInput(message, logLevel, resourceId, timeStamp, metadata));
+    }
+  }
+
+  /** @return number of records in the stage */
+  public int getRecords() {
+    return records;
+  }
+
+  /** @return bytes taken by the records */
+  public int usedBytes() {
+    return buffer.position();
+  }
+
+  /** @return bytes left for records */
+  public int remaining() {
+    return buffer.remaining();
+  }
+
+  /** Empties the stage, the memory is kept for the next records. */
+  public void clear() {
+    ((Buffer) buffer).clear();
+    records = 0;
+  }
+
+  private ByteBuffer reader() {
+    final ByteBuffer reader = buffer.duplicate();
+    ((Buffer) reader).flip();
+    return reader;
+  }
+
+  private boolean putString(final String value) {
+    if (buffer.remaining() < Integer.BYTES) {
+      return false;
+    }
+    if (value == null) {
+      buffer.putInt(NULL);
+      return true;
+    }
+    final int lengthAt = buffer.position();
+    buffer.putInt(0);
+    encoder.reset();
+    final CoderResult result = encoder.encode(CharBuffer.wrap(value), buffer, true);
+    if (result.isOverflow() || encoder.flush(buffer).isOverflow()) {
+      return false;
+    }
+    buffer.putInt(lengthAt, buffer.position() - lengthAt - Integer.BYTES);
+    return true;
+  }
+
+  private boolean putMap(final Map<String, String> map) {
+    if (buffer.remaining() < Integer.BYTES) {
+      return false;
+    }
+    if (map == null) {
+      buffer.putInt(NULL);
+      return true;
+    }
+    buffer.putInt(map.size());
+    for (final Map.Entry<String, String> entry : map.entrySet()) {
+      if (!putString(entry.getKey()) || !putString(entry.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String getString(final ByteBuffer reader) {
+    final int length = reader.getInt();
+    if (length == NULL) {
+      return null;
+    }
+    final ByteBuffer bytes = reader.slice();
+    ((Buffer) bytes).limit(length);
+    ((Buffer) reader).position(reader.position() + length);
+    return StandardCharsets.UTF_8.decode(bytes).toString();
+  }
+
+  private static Map<String, String> getMap(final ByteBuffer reader) {
+    final int size = reader.getInt();
+    if (size == NULL) {
+      return null;
+    }
+    final Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      final String key = getString(reader);
+      map.put(key, getString(reader));
+    }
+    return map;
+  }
+}
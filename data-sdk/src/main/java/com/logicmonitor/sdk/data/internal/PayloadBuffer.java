@@ -0,0 +1,97 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This Class holds one serialized payload. The JSON is encoded into it once and every consumer
+ * (signer, debug log and request body) reads the same bytes. Buffers are pooled, so a steady flow
+ * of flushes reuses the same arrays instead of allocating megabytes per flush.
+ */
+public final class PayloadBuffer extends ByteArrayOutputStream {
+
+  private static final int INITIAL_CAPACITY = 64 * 1024;
+
+  /**
+   * Buffers grown beyond this are left to the garbage collector instead of being pooled. A logs
+   * payload of up to 8 MB grows its buffer to 16 MB at most.
+   */
+  private static final int MAX_POOLED_CAPACITY = 16 * 1024 * 1024;
+
+  private static final int MAX_POOLED_BUFFERS = 16;
+
+  /** Capacity of all the pooled buffers together, room for two full logs payloads. */
+  static final long MAX_POOLED_BYTES = 32L * 1024 * 1024;
+
+  /** Used as a stack, the most recently released buffer is the one most likely still cached. */
+  private static final ConcurrentLinkedDeque<PayloadBuffer> POOL = new ConcurrentLinkedDeque<>();
+
+  private static final AtomicInteger POOLED = new AtomicInteger();
+
+  private static final AtomicLong POOLED_BYTES = new AtomicLong();
+
+  private PayloadBuffer() {
+    super(INITIAL_CAPACITY);
+  }
+
+  /** @return an empty buffer, from the pool when one is available */
+  public static PayloadBuffer acquire() {
+    final PayloadBuffer buffer = POOL.pollFirst();
+    if (buffer == null) {
+      return new PayloadBuffer();
+    }
+    POOLED.decrementAndGet();
+    POOLED_BYTES.addAndGet(-buffer.buf.length);
+    return buffer;
+  }
+
+  /** Returns the buffer to the pool, it must not be used afterwards. */
+  public void release() {
+    reset();
+    final int capacity = buf.length;
+    if (capacity > MAX_POOLED_CAPACITY) {
+      return;
+    }
+    if (POOLED.incrementAndGet() > MAX_POOLED_BUFFERS) {
+      POOLED.decrementAndGet();
+      return;
+    }
+    if (POOLED_BYTES.addAndGet(capacity) > MAX_POOLED_BYTES) {
+      POOLED_BYTES.addAndGet(-capacity);
+      POOLED.decrementAndGet();
+      return;
+    }
+    POOL.offerFirst(this);
+  }
+
+  /** @return the backing array, valid from 0 to size() */
+  public byte[] array() {
+    return buf;
+  }
+
+  /** @return the content decoded as UTF-8, only meant for logging */
+  @Override
+  public String toString() {
+    return new String(buf, 0, count, StandardCharsets.UTF_8);
+  }
+
+  /** @return number of buffers waiting in the pool */
+  static int pooled() {
+    return POOLED.get();
+  }
+
+  /** @return capacity of the buffers waiting in the pool */
+  static long pooledBytes() {
+    return POOLED_BYTES.get();
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openapitools.client.ApiException;
+
+/**
+ * This Class decides whether and when a failed ingest request is sent again. Delays grow
+ * exponentially from Configuration.getRetryBaseDelay() up to Configuration.getRetryMaxDelay() and
+ * are drawn uniformly from [0, delay] (full jitter), so clients failing together do not retry
+ * together. A Retry-After header sent with a 429 or 503 takes precedence.
+ *
+ * <p>Retries are paid from a budget shared by every Metrics and Logs instance: each retry costs one
+ * token and each successful request earns back a fraction of one, so during a long outage the SDK
+ * stops retrying instead of multiplying the load on LogicMonitor.
+ */
+public class RetryPolicy {
+
+  private static final String RETRY_AFTER = "Retry-After";
+
+  private final double maxTokens;
+  private final double tokenRatio;
+  private double tokens;
+
+  /** Budget of 10 retries, earning back one retry every 10 successful requests. */
+  public RetryPolicy() {
+    this(10, 0.1);
+  }
+
+  /**
+   * @param maxTokens maximum number of retries that can be made in a row
+   * @param tokenRatio retries earned back by each successful request
+   */
+  public RetryPolicy(final double maxTokens, final double tokenRatio) {
+    if (maxTokens < 1 || tokenRatio < 0) {
+      throw new IllegalArgumentException("Invalid retry budget");
+    }
+    this.maxTokens = maxTokens;
+    this.tokenRatio = tokenRatio;
+    this.tokens = maxTokens;
+  }
+
+  /**
+   * @param e failure of the previous attempt
+   * @return true for network errors, 408, 429 and 5xx responses other than 501 and 505
+   */
+  public static boolean isRetryable(final ApiException e) {
+    final int code = e.getCode();
+    if (code == 0) {
+      for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+        if (cause instanceof IOException) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return code == 408 || code == 429 || (code >= 500 && code != 501 && code != 505);
+  }
+
+  /**
+   * Takes a retry from the budget when the failure is retryable.
+   *
+   * @param e failure of the previous attempt
+   * @param attempt number of attempts already made, starting with 1
+   * @return true when the request should be sent again
+   */
+  public boolean shouldRetry(final ApiException e, final int attempt) {
+    if (attempt > Configuration.getMaxRetries() || !isRetryable(e)) {
+      return false;
+    }
+    synchronized (this) {
+      if (tokens < 1) {
+        return false;
+      }
+      tokens--;
+      return true;
+    }
+  }
+
+  /** Earns back part of a retry, called for every successful request. */
+  public synchronized void onSuccess() {
+    tokens = Math.min(maxTokens, tokens + tokenRatio);
+  }
+
+  /** @return retries left in the budget */
+  public synchronized double getTokens() {
+    return tokens;
+  }
+
+  /**
+   * @param e failure of the previous attempt
+   * @param attempt number of attempts already made, starting with 1
+   * @return delay in milliseconds before the next attempt
+   */
+  public long delayMillis(final ApiException e, final int attempt) {
+    final long maxDelay = Configuration.getRetryMaxDelay();
+    final long retryAfter = retryAfterMillis(e.getResponseHeaders());
+    if (retryAfter >= 0) {
+      return Math.min(retryAfter, maxDelay);
+    }
+    final int shift = Math.min(attempt - 1, 30);
+    final long ceiling = Math.min(maxDelay, Configuration.getRetryBaseDelay() << shift);
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  /**
+   * @param headers response headers, may be null
+   * @return milliseconds requested by a Retry-After header in seconds or HTTP-date form, -1 when
+   *     there is none or it cannot be parsed
+   */
+  static long retryAfterMillis(final Map<String, List<String>> headers) {
+    if (headers == null) {
+      return -1;
+    }
+    for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+      if (!RETRY_AFTER.equalsIgnoreCase(header.getKey())
+          || header.getValue() == null
+          || header.getValue().isEmpty()) {
+        continue;
+      }
+      final String value = header.getValue().get(0).trim();
+      try {
+        return Math.max(0, Long.parseLong(value) * 1000);
+      } catch (NumberFormatException notSeconds) {
+        try {
+          final ZonedDateTime date =
+              ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+          return Math.max(0, Duration.between(ZonedDateTime.now(), date).toMillis());
+        } catch (DateTimeParseException notDate) {
+          return -1;
+        }
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * This Class is a ring of preallocated slots in the style of the LMAX Disruptor, for many
+ * producers and a single consumer. A producer claims a sequence with tryClaim, fills the slot
+ * returned by get and makes it visible with publish. The consumer hands published slots to drain
+ * in sequence order and frees each one once it has been handled, so slots are reused instead of
+ * allocated per record.
+ *
+ * <p>Whether a slot is published is tracked by the lap of the sequence stored in it, so a slot
+ * published in an earlier lap is not mistaken for the current one.
+ *
+ * @param <E> type of the slots
+ */
+public class RingBuffer<E> {
+
+  /** Largest number of slots, keeps laps within an int. */
+  public static final int MAX_SIZE = 1 << 30;
+
+  private final Object[] slots;
+  private final int mask;
+  private final int shift;
+
+  /** Lap of the sequence last published in each slot, -1 before the first. */
+  private final AtomicIntegerArray published;
+
+  /** Last sequence claimed by a producer. */
+  private final AtomicLong claimed = new AtomicLong(-1);
+
+  /** Last sequence handled by the consumer, its slot and every earlier one may be reused. */
+  private volatile long consumed = -1;
+
+  /**
+   * @param size number of slots, rounded up to a power of two
+   * @param factory creates the slots, called size times up front
+   */
+  public RingBuffer(final int size, final Supplier<E> factory) {
+    if (size <= 0 || size > MAX_SIZE) {
+      throw new IllegalArgumentException("Ring buffer size must be between 1 and " + MAX_SIZE);
+    }
+    final int capacity = size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    slots = new Object[capacity];
+    for (int i = 0; i < capacity; i++) {
+      slots[i] = factory.get();
+    }
+    mask = capacity - 1;
+    shift = Integer.numberOfTrailingZeros(capacity);
+    published = new AtomicIntegerArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      published.set(i, -1);
+    }
+  }
+
+  /** @return sequence of a free slot now owned by the caller, -1 when every slot is taken */
+  public long tryClaim() {
+    for (; ; ) {
+      final long current = claimed.get();
+      final long next = current + 1;
+      if (next - consumed > slots.length) {
+        return -1;
+      }
+      if (claimed.compareAndSet(current, next)) {
+        return next;
+      }
+    }
+  }
+
+  /**
+   * @param sequence claimed by the caller
+   * @return the slot of the sequence
+   */
+  @SuppressWarnings("unchecked")
+  public E get(final long sequence) {
+    return (E) slots[(int) sequence & mask];
+  }
+
+  /** @param sequence claimed and filled by the caller, handed to the consumer */
+  public void publish(final long sequence) {
+    published.lazySet((int) sequence & mask, (int) (sequence >>> shift));
+  }
+
+  /**
+   * Hands every published slot to handler in sequence order, up to the first one claimed but not
+   * published yet. Only one thread may drain at a time.
+   *
+   * @param handler copies what it needs out of the slot, which is reused afterwards
+   * @return number of slots handled
+   */
+  public int drain(final Consumer<E> handler) {
+    long next = consumed + 1;
+    int handled = 0;
+    while (published.get((int) next & mask) == (int) (next >>> shift)) {
+      try {
+        handler.accept(get(next));
+      } finally {
+        consumed = next;
+      }
+      next++;
+      handled++;
+    }
+    return handled;
+  }
+
+  /** @return number of slots claimed and not handled yet */
+  public int size() {
+    return (int) Math.max(0, claimed.get() - consumed);
+  }
+
+  /** @return number of slots */
+  public int capacity() {
+    return slots.length;
+  }
+}
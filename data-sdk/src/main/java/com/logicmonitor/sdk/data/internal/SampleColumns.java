@@ -0,0 +1,306 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * This Class holds the values of one data point in the payload cache, epoch seconds to value, as a
+ * Map of Strings backed by growable long[] and double[] columns. Timestamps and values are parsed
+ * when put and only turned back into Strings when the map is read, that is when the payload is
+ * encoded. Values read back the way they were put, "10" or "10.0"; a pair that would not, like
+ * "10.50" or a timestamp with a leading zero, is kept as Strings instead. Not thread safe, used
+ * under the cache lock.
+ */
+public class SampleColumns extends AbstractMap<String, String> {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  /** Longest timestamp parsed, any 18 digits fit into a long. */
+  private static final int MAX_TIMESTAMP_DIGITS = 18;
+
+  /** Whole numbers below it are exact as doubles and formatted without a fraction. */
+  private static final double EXACT_WHOLE_LIMIT = 1L << 53;
+
+  private long[] timestamps = new long[INITIAL_CAPACITY];
+  private double[] values = new double[INITIAL_CAPACITY];
+
+  /** Whether each value was put as Double.toString writes it, "10.0" rather than "10". */
+  private boolean[] decimal = new boolean[INITIAL_CAPACITY];
+
+  private int size;
+
+  /** Largest timestamp in the columns, a larger one is appended without searching. */
+  private long latest = Long.MIN_VALUE;
+
+  /** Pairs kept as Strings, null until there is one. */
+  private Map<String, String> others;
+
+  private Set<Entry<String, String>> entrySet;
+
+  /** Number of the columns in the OffHeapStage holding values for them, -1 when none does. */
+  private int stageIndex = -1;
+
+  /**
+   * Sets the value at a timestamp, without allocating unless the columns grow or a value is
+   * replaced.
+   *
+   * @param epochSeconds
+   * @param value
+   * @return the value replaced, null when there was none
+   */
+  public String add(final long epochSeconds, final double value) {
+    return add(epochSeconds, value, false);
+  }
+
+  /**
+   * @param epochSeconds
+   * @param value
+   * @param isDecimal whether the value reads back as "10.0" rather than "10"
+   * @return the value replaced, null when there was none
+   */
+  public String add(final long epochSeconds, final double value, final boolean isDecimal) {
+    if (epochSeconds <= latest) {
+      final int index = indexOf(epochSeconds);
+      if (index >= 0) {
+        final String previous = valueAt(index);
+        values[index] = value;
+        decimal[index] = isDecimal;
+        return previous;
+      }
+    }
+    final String previous =
+        others == null || others.isEmpty() ? null : others.remove(Long.toString(epochSeconds));
+    append(epochSeconds, value, isDecimal);
+    return previous;
+  }
+
+  @Override
+  public String put(final String key, final String value) {
+    final long epochSeconds = key == null ? -1 : parseTimestamp(key);
+    if (epochSeconds >= 0 && value != null) {
+      final double parsed = parseValue(value);
+      if (!Double.isNaN(parsed) || "NaN".equals(value)) {
+        final boolean isDecimal = isDecimal(parsed, value);
+        final int index = epochSeconds <= latest ? indexOf(epochSeconds) : -1;
+        if (index >= 0) {
+          final String previous = valueAt(index);
+          values[index] = parsed;
+          decimal[index] = isDecimal;
+          return previous;
+        }
+        final String previous = others == null ? null : others.remove(key);
+        append(epochSeconds, parsed, isDecimal);
+        return previous;
+      }
+    }
+    final String previous = remove(key);
+    if (others == null) {
+      others = new HashMap<>();
+    }
+    others.put(key, value);
+    return previous;
+  }
+
+  @Override
+  public String get(final Object key) {
+    if (key instanceof String) {
+      final long epochSeconds = parseTimestamp((String) key);
+      final int index = epochSeconds >= 0 ? indexOf(epochSeconds) : -1;
+      if (index >= 0) {
+        return valueAt(index);
+      }
+    }
+    return others == null ? null : others.get(key);
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    if (key instanceof String) {
+      final long epochSeconds = parseTimestamp((String) key);
+      if (epochSeconds >= 0 && indexOf(epochSeconds) >= 0) {
+        return true;
+      }
+    }
+    return others != null && others.containsKey(key);
+  }
+
+  @Override
+  public String remove(final Object key) {
+    if (key instanceof String) {
+      final long epochSeconds = parseTimestamp((String) key);
+      final int index = epochSeconds >= 0 ? indexOf(epochSeconds) : -1;
+      if (index >= 0) {
+        final String previous = valueAt(index);
+        removeAt(index);
+        return previous;
+      }
+    }
+    return others == null ? null : others.remove(key);
+  }
+
+  @Override
+  public int size() {
+    return size + (others == null ? 0 : others.size());
+  }
+
+  @Override
+  public void clear() {
+    size = 0;
+    latest = Long.MIN_VALUE;
+    others = null;
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new Entries();
+    }
+    return entrySet;
+  }
+
+  /**
+   * @param value
+   * @return value as it is encoded, whole numbers without a fraction
+   */
+  public static String format(final double value) {
+    if (value == Math.rint(value) && Math.abs(value) < EXACT_WHOLE_LIMIT) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+
+  /**
+   * @param parsed value returned by parseValue
+   * @param value as given
+   * @return whether the value reads back as "10.0" rather than "10"
+   */
+  public static boolean isDecimal(final double parsed, final String value) {
+    return !format(parsed).equals(value);
+  }
+
+  /** @return stageIndex */
+  public int getStageIndex() {
+    return stageIndex;
+  }
+
+  /** @param stageIndex */
+  public void setStageIndex(final int stageIndex) {
+    this.stageIndex = stageIndex;
+  }
+
+  private String valueAt(final int index) {
+    return decimal[index] ? Double.toString(values[index]) : format(values[index]);
+  }
+
+  private void append(final long epochSeconds, final double value, final boolean isDecimal) {
+    if (size == timestamps.length) {
+      timestamps = Arrays.copyOf(timestamps, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+      decimal = Arrays.copyOf(decimal, size * 2);
+    }
+    timestamps[size] = epochSeconds;
+    values[size] = value;
+    decimal[size] = isDecimal;
+    size++;
+    latest = Math.max(latest, epochSeconds);
+  }
+
+  /** Searches from the end, where the recent timestamps are. */
+  private int indexOf(final long epochSeconds) {
+    for (int i = size - 1; i >= 0; i--) {
+      if (timestamps[i] == epochSeconds) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void removeAt(final int index) {
+    final int moved = size - index - 1;
+    System.arraycopy(timestamps, index + 1, timestamps, index, moved);
+    System.arraycopy(values, index + 1, values, index, moved);
+    System.arraycopy(decimal, index + 1, decimal, index, moved);
+    size--;
+  }
+
+  /** @return the timestamp, -1 unless it is digits without a leading zero */
+  public static long parseTimestamp(final String key) {
+    final int length = key.length();
+    if (length == 0 || length > MAX_TIMESTAMP_DIGITS || (key.charAt(0) == '0' && length > 1)) {
+      return -1;
+    }
+    long parsed = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = key.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      parsed = parsed * 10 + (c - '0');
+    }
+    return parsed;
+  }
+
+  /** @return the value, NaN unless it is encoded back exactly as given */
+  public static double parseValue(final String value) {
+    try {
+      final double parsed = Double.parseDouble(value);
+      return format(parsed).equals(value) || Double.toString(parsed).equals(value)
+          ? parsed
+          : Double.NaN;
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  private final class Entries extends AbstractSet<Entry<String, String>> {
+
+    @Override
+    public Iterator<Entry<String, String>> iterator() {
+      final Iterator<Entry<String, String>> rest =
+          others == null ? null : others.entrySet().iterator();
+      return new Iterator<Entry<String, String>>() {
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+          return next < size || (rest != null && rest.hasNext());
+        }
+
+        @Override
+        public Entry<String, String> next() {
+          if (next < size) {
+            final int index = next++;
+            return new SimpleImmutableEntry<>(Long.toString(timestamps[index]), valueAt(index));
+          }
+          if (rest == null) {
+            throw new NoSuchElementException();
+          }
+          return rest.next();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return SampleColumns.this.size();
+    }
+
+    @Override
+    public void clear() {
+      SampleColumns.this.clear();
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This Class owns the worker threads shared by every Metrics and Logs instance: batch merges,
+ * interval flushes and retry backoffs all run on Configuration.getWorkerThreads() daemon threads,
+ * however many instances and requests there are. It also counts the sends still outstanding, so
+ * flush and close can wait for them to drain.
+ *
+ * <p>On Java 21 and later, unless Configuration.setVirtualThreads(false) was called, the tasks
+ * themselves run on virtual threads and the worker threads only keep time for delayed ones.
+ */
+public final class SdkRuntime {
+
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+  private static final AtomicInteger PENDING = new AtomicInteger();
+
+  private static final Object DRAINED = new Object();
+
+  private static volatile ScheduledThreadPoolExecutor executor;
+
+  private static volatile ExecutorService virtualExecutor;
+
+  private SdkRuntime() {}
+
+  /** @return the shared executor, started on first use */
+  public static ScheduledThreadPoolExecutor executor() {
+    ScheduledThreadPoolExecutor current = executor;
+    if (current == null) {
+      synchronized (SdkRuntime.class) {
+        current = executor;
+        if (current == null) {
+          current =
+              new ScheduledThreadPoolExecutor(
+                  Configuration.getWorkerThreads(),
+                  runnable -> {
+                    final Thread thread =
+                        new Thread(
+                            runnable, "lm-data-sdk-worker-" + THREAD_NUMBER.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                  });
+          current.setRemoveOnCancelPolicy(true);
+          executor = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /** @return Executor running SDK tasks, on virtual threads where available */
+  public static Executor tasks() {
+    if (!Configuration.getVirtualThreads() || !VirtualThreads.isSupported()) {
+      return executor();
+    }
+    ExecutorService current = virtualExecutor;
+    if (current == null) {
+      synchronized (SdkRuntime.class) {
+        current = virtualExecutor;
+        if (current == null) {
+          current = VirtualThreads.newExecutor("lm-data-sdk-virtual-");
+          virtualExecutor = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /** @param workerThreads new number of worker threads, applied to a running executor too */
+  public static void setWorkerThreads(final int workerThreads) {
+    final ScheduledThreadPoolExecutor current = executor;
+    if (current != null) {
+      current.setCorePoolSize(workerThreads);
+    }
+  }
+
+  /**
+   * Runs the task after the delay, counting it as outstanding until it has run.
+   *
+   * @param task
+   * @param delayMillis
+   * @return ScheduledFuture of the task
+   */
+  public static ScheduledFuture<?> schedule(final Runnable task, final long delayMillis) {
+    PENDING.incrementAndGet();
+    return delay(
+        () -> {
+          try {
+            task.run();
+          } finally {
+            done();
+          }
+        },
+        delayMillis);
+  }
+
+  /**
+   * Runs the task on tasks() after the delay, without counting it as outstanding.
+   *
+   * @param task
+   * @param delayMillis
+   * @return ScheduledFuture of the hand-off, cancelling it after the delay does not stop the task
+   */
+  public static ScheduledFuture<?> delay(final Runnable task, final long delayMillis) {
+    final Executor tasks = tasks();
+    if (tasks == executor) {
+      return executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+    return executor().schedule(() -> tasks.execute(task), delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Counts the future as outstanding until it completes.
+   *
+   * @param future
+   * @return future
+   */
+  public static <T> CompletableFuture<T> track(final CompletableFuture<T> future) {
+    PENDING.incrementAndGet();
+    future.whenComplete((result, throwable) -> done());
+    return future;
+  }
+
+  /**
+   * @param deadlineNanos System.nanoTime() by which the sends must be done
+   * @return true when no send is outstanding, false when the deadline passed first
+   * @throws InterruptedException
+   */
+  public static boolean awaitDrained(final long deadlineNanos) throws InterruptedException {
+    synchronized (DRAINED) {
+      while (PENDING.get() > 0) {
+        final long remaining = deadlineNanos - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(DRAINED, remaining);
+      }
+      return true;
+    }
+  }
+
+  /** @return number of sends and scheduled retries outstanding */
+  public static int getPending() {
+    return PENDING.get();
+  }
+
+  private static void done() {
+    if (PENDING.decrementAndGet() == 0) {
+      synchronized (DRAINED) {
+        DRAINED.notifyAll();
+      }
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.ApiClientUserAgent;
+import com.logicmonitor.sdk.data.Configuration;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * This Class holds the single ApiClient shared by every Metrics and Logs instance. Sharing one
+ * OkHttp client means sharing its connection pool, so connections are kept alive between flushes
+ * and TLS sessions are resumed instead of being negotiated for every batch.
+ */
+public final class SharedApiClient {
+
+  private static volatile ApiClientUserAgent apiClient;
+
+  private SharedApiClient() {}
+
+  /**
+   * @param userAgentSuffix suffix appended to the User-Agent, only used when the client is created
+   * @return the SDK-wide ApiClient
+   */
+  public static ApiClientUserAgent getInstance(String userAgentSuffix) {
+    ApiClientUserAgent client = apiClient;
+    if (client == null) {
+      synchronized (SharedApiClient.class) {
+        client = apiClient;
+        if (client == null) {
+          client = new ApiClientUserAgent(userAgentSuffix);
+          client.setHttpClient(buildHttpClient(client.getHttpClient()));
+          apiClient = client;
+        }
+      }
+    }
+    return client;
+  }
+
+  /**
+   * Closes the pooled connections and drops the shared client, the next request creates a new one
+   * with the current Configuration.
+   */
+  public static synchronized void reset() {
+    if (apiClient != null) {
+      apiClient.getHttpClient().connectionPool().evictAll();
+      apiClient = null;
+    }
+  }
+
+  /**
+   * @param base OkHttpClient created by ApiClient, its interceptors and timeouts are kept
+   * @return OkHttpClient sized with Configuration.getConnectionPoolMaxsize()
+   */
+  static OkHttpClient buildHttpClient(OkHttpClient base) {
+    final int maxConnections = Configuration.getConnectionPoolMaxsize();
+    // on Java 21+ every async call blocks a virtual thread instead of a pooled platform thread
+    final Dispatcher dispatcher =
+        Configuration.getVirtualThreads() && VirtualThreads.isSupported()
+            ? new Dispatcher(VirtualThreads.newExecutor("lm-data-sdk-http-"))
+            : new Dispatcher();
+    dispatcher.setMaxRequests(maxConnections);
+    dispatcher.setMaxRequestsPerHost(maxConnections);
+    return base.newBuilder()
+        .connectionPool(
+            new ConnectionPool(
+                maxConnections, Configuration.getKeepAliveDuration(), TimeUnit.SECONDS))
+        .dispatcher(dispatcher)
+        .retryOnConnectionFailure(true)
+        .build();
+  }
+}
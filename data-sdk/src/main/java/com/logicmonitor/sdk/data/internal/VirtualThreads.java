@@ -0,0 +1,33 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * This Class creates executors running every task on a new virtual thread. Virtual threads are
+ * only available on Java 21 and later, this is the Java 8 version of the multi-release jar and
+ * SdkRuntime keeps its platform worker threads.
+ */
+public final class VirtualThreads {
+
+  private VirtualThreads() {}
+
+  /** @return true when the running JVM provides virtual threads */
+  public static boolean isSupported() {
+    return false;
+  }
+
+  /**
+   * @param prefix name of the threads, followed by their number
+   * @return ExecutorService starting a virtual thread per task
+   */
+  public static ExecutorService newExecutor(final String prefix) {
+    throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.ApiResponse;
+
+/**
+ * This Class is a Transport which never touches the network. Every request body is still written
+ * (and compressed) exactly as it would go on the wire, into a stream that only counts the bytes, so
+ * the serialize, batch and compress pipeline can be measured at full speed or asserted in tests.
+ */
+public class InMemoryTransport implements Transport {
+
+  private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+  private final int statusCode;
+  private final String responseBody;
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private volatile TransportRequest lastRequest;
+
+  /** Answers every request with 202 Accepted. */
+  public InMemoryTransport() {
+    this(202);
+  }
+
+  /** @param statusCode status answered to every request */
+  public InMemoryTransport(final int statusCode) {
+    this(statusCode, "");
+  }
+
+  /**
+   * @param statusCode status answered to every request
+   * @param responseBody body answered to every request, for example the errors of a 207
+   */
+  public InMemoryTransport(final int statusCode, final String responseBody) {
+    this.statusCode = statusCode;
+    this.responseBody = responseBody;
+  }
+
+  @Override
+  public ApiResponse<String> execute(final TransportRequest request) throws ApiException {
+    final CountingOutputStream out = new CountingOutputStream();
+    try {
+      request.writeBody(out);
+    } catch (IOException e) {
+      throw new ApiException(e);
+    }
+    lastRequest = request;
+    requestCount.incrementAndGet();
+    bytesWritten.addAndGet(out.count);
+    if (statusCode < 200 || statusCode >= 300) {
+      throw new ApiException(
+          "In-memory transport answered " + statusCode, statusCode, NO_HEADERS, responseBody);
+    }
+    return new ApiResponse<>(statusCode, NO_HEADERS, responseBody);
+  }
+
+  @Override
+  public CompletableFuture<ApiResponse<String>> executeAsync(final TransportRequest request) {
+    final CompletableFuture<ApiResponse<String>> future = new CompletableFuture<>();
+    try {
+      future.complete(execute(request));
+    } catch (ApiException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /** @return number of requests received */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /** @return number of body bytes that would have been sent, after compression */
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /** @return last request received, null before the first one */
+  public TransportRequest getLastRequest() {
+    return lastRequest;
+  }
+
+  /** Discards everything written to it. */
+  private static class CountingOutputStream extends OutputStream {
+
+    private long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.transport;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.ApiResponse;
+
+/**
+ * This Class is a Transport built on java.net.http.HttpClient, which negotiates HTTP/2 and needs no
+ * third-party dependency. It is only available on Java 11 and later, this is the Java 8 version of
+ * the multi-release jar and cannot be instantiated.
+ */
+public class JdkHttpTransport implements Transport {
+
+  public JdkHttpTransport() {
+    throw new UnsupportedOperationException("JdkHttpTransport requires Java 11 or later");
+  }
+
+  /** @param requestTimeout time a request may take once connected, before it fails */
+  public JdkHttpTransport(final Duration requestTimeout) {
+    throw new UnsupportedOperationException("JdkHttpTransport requires Java 11 or later");
+  }
+
+  /** @return true when the running JVM provides java.net.http.HttpClient */
+  public static boolean isSupported() {
+    return false;
+  }
+
+  @Override
+  public ApiResponse<String> execute(final TransportRequest request) throws ApiException {
+    throw new UnsupportedOperationException("JdkHttpTransport requires Java 11 or later");
+  }
+
+  @Override
+  public CompletableFuture<ApiResponse<String>> executeAsync(final TransportRequest request) {
+    throw new UnsupportedOperationException("JdkHttpTransport requires Java 11 or later");
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.transport;
+
+import com.google.gson.reflect.TypeToken;
+import com.logicmonitor.sdk.data.ApiClientUserAgent;
+import com.logicmonitor.sdk.data.internal.GzipRequestBody;
+import com.logicmonitor.sdk.data.internal.SharedApiClient;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.openapitools.client.ApiCallback;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.ApiResponse;
+
+/**
+ * This Class is the default Transport, it sends requests with the OkHttp client of an ApiClient,
+ * by default the pooled client shared by every Metrics and Logs instance.
+ */
+public class OkHttpTransport implements Transport {
+
+  private static final MediaType JSON = MediaType.parse("application/json");
+
+  private static final Type RETURN_TYPE = new TypeToken<String>() {}.getType();
+
+  private final ApiClient apiClient;
+
+  private final AtomicReference<CompletableFuture<Duration>> warmUp = new AtomicReference<>();
+
+  /** Uses the SDK-wide shared ApiClient. */
+  public OkHttpTransport() {
+    this(null);
+  }
+
+  /** @param apiClient ApiClient whose OkHttp client sends the requests */
+  public OkHttpTransport(final ApiClient apiClient) {
+    this.apiClient = apiClient;
+  }
+
+  /** @return ApiClient used to send the requests */
+  public ApiClient getApiClient() {
+    if (apiClient != null) {
+      return apiClient;
+    }
+    return SharedApiClient.getInstance(
+        ApiClientUserAgent.getUserAgentSuffix(System.getenv("APPLICATION_NAME")));
+  }
+
+  @Override
+  public ApiResponse<String> execute(final TransportRequest request) throws ApiException {
+    final ApiClient client = getApiClient();
+    return client.execute(newCall(client, request), RETURN_TYPE);
+  }
+
+  @Override
+  public CompletableFuture<ApiResponse<String>> executeAsync(final TransportRequest request) {
+    final CompletableFuture<ApiResponse<String>> future = new CompletableFuture<>();
+    final ApiClient client = getApiClient();
+    client.executeAsync(
+        newCall(client, request),
+        RETURN_TYPE,
+        new ApiCallback<String>() {
+          @Override
+          public void onFailure(
+              ApiException e, int statusCode, Map<String, List<String>> responseHeaders) {
+            future.completeExceptionally(e);
+          }
+
+          @Override
+          public void onSuccess(
+              String result, int statusCode, Map<String, List<String>> responseHeaders) {
+            future.complete(new ApiResponse<>(statusCode, responseHeaders, result));
+          }
+
+          @Override
+          public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {}
+
+          @Override
+          public void onDownloadProgress(long bytesRead, long contentLength, boolean done) {}
+        });
+    return future;
+  }
+
+  /**
+   * Sends concurrent HEAD requests to the url, each response is discarded and its connection is
+   * returned to the pool. The pool is warmed once, later calls return the same future unless the
+   * warm-up failed.
+   */
+  @Override
+  public CompletableFuture<Duration> warmUp(final String url, final int connections) {
+    final CompletableFuture<Duration> started = new CompletableFuture<>();
+    if (!warmUp.compareAndSet(null, started)) {
+      return warmUp.get();
+    }
+    started.whenComplete(
+        (duration, throwable) -> {
+          if (throwable != null) {
+            warmUp.compareAndSet(started, null);
+          }
+        });
+    final long start = System.nanoTime();
+    final OkHttpClient client = getApiClient().getHttpClient();
+    final AtomicInteger pending = new AtomicInteger(connections);
+    for (int i = 0; i < connections; i++) {
+      client
+          .newCall(new Request.Builder().url(url).head().build())
+          .enqueue(
+              new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                  started.completeExceptionally(e);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                  response.close();
+                  if (pending.decrementAndGet() == 0) {
+                    started.complete(Duration.ofNanos(System.nanoTime() - start));
+                  }
+                }
+              });
+    }
+    return started;
+  }
+
+  private Call newCall(final ApiClient client, final TransportRequest request) {
+    final Request.Builder builder = new Request.Builder().url(request.getUrl());
+    for (final Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      builder.header(header.getKey(), header.getValue());
+    }
+    final RequestBody body;
+    if (request.isGzip()) {
+      builder.header("Content-Encoding", "gzip");
+      body =
+          new GzipRequestBody(
+              request.getBody(), request.getBodyLength(), request.getCompressionLevel());
+    } else {
+      body = RequestBody.create(request.getBody(), JSON, 0, request.getBodyLength());
+    }
+    builder.method(request.getMethod(), body);
+    return client.getHttpClient().newCall(builder.build());
+  }
+}
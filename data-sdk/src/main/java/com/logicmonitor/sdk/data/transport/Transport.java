@@ -0,0 +1,47 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.transport;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.ApiResponse;
+
+/**
+ * This Interface is the network layer the batching pipeline sends its requests through. The
+ * request is already serialized, signed and rate limited, a Transport only has to put it on the
+ * wire. It is selected with Configuration.setTransport.
+ */
+public interface Transport {
+
+  /**
+   * @param request request to send
+   * @return response of a 2xx status
+   * @throws ApiException on any other status or when the request could not be sent
+   */
+  ApiResponse<String> execute(TransportRequest request) throws ApiException;
+
+  /**
+   * @param request request to send
+   * @return CompletableFuture completed with the response of a 2xx status, or exceptionally with
+   *     an ApiException
+   */
+  CompletableFuture<ApiResponse<String>> executeAsync(TransportRequest request);
+
+  /**
+   * Resolves the host and opens connections to it ahead of the first request, so the first flush
+   * does not pay for DNS, TCP and TLS. Implementations without connections do nothing.
+   *
+   * @param url base URL of the ingest API
+   * @param connections number of connections to open
+   * @return CompletableFuture completed with the time the warm-up took
+   */
+  default CompletableFuture<Duration> warmUp(String url, int connections) {
+    return CompletableFuture.completedFuture(Duration.ZERO);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.transport;
+
+import com.logicmonitor.sdk.data.internal.GzipRequestBody;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Getter;
+
+/** This model is a serialized and signed request handed to a Transport. */
+@Getter
+@Builder
+public class TransportRequest {
+
+  private final String method;
+
+  private final String url;
+
+  private final Map<String, String> headers;
+
+  /** Serialized JSON, uncompressed. */
+  private final byte[] body;
+
+  /** Number of bytes of body to send, the whole array when not set. */
+  @Builder.Default private final int bodyLength = -1;
+
+  /** Whether the body is sent with Content-Encoding gzip. */
+  private final boolean gzip;
+
+  private final int compressionLevel;
+
+  /**
+   * Writes the body as it goes on the wire, gzip compressed when requested.
+   *
+   * @param out stream to write to, it is not closed
+   * @throws IOException
+   */
+  public void writeBody(final OutputStream out) throws IOException {
+    if (gzip) {
+      GzipRequestBody.gzip(body, getBodyLength(), compressionLevel, out);
+    } else {
+      out.write(body, 0, getBodyLength());
+    }
+  }
+
+  /** @return number of bytes of body to send */
+  public int getBodyLength() {
+    return bodyLength < 0 ? body.length : bodyLength;
+  }
+}
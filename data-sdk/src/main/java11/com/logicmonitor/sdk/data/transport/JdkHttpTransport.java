@@ -0,0 +1,166 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.ApiResponse;
+
+/**
+ * This Class is a Transport built on java.net.http.HttpClient, which negotiates HTTP/2 and needs no
+ * third-party dependency. This is the Java 11 version of the multi-release jar.
+ */
+public class JdkHttpTransport implements Transport {
+
+  private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+  /**
+   * Time a request may take once connected, the read and write timeouts of the OkHttp client of
+   * ApiClient, 10 seconds each.
+   */
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10 + 10);
+
+  private final HttpClient httpClient;
+
+  private final Duration requestTimeout;
+
+  private final AtomicReference<CompletableFuture<Duration>> warmUp = new AtomicReference<>();
+
+  public JdkHttpTransport() {
+    this(REQUEST_TIMEOUT);
+  }
+
+  /** @param requestTimeout time a request may take once connected, before it fails */
+  public JdkHttpTransport(final Duration requestTimeout) {
+    this.requestTimeout = requestTimeout;
+    httpClient =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+  }
+
+  /** @return true when the running JVM provides java.net.http.HttpClient */
+  public static boolean isSupported() {
+    return true;
+  }
+
+  @Override
+  public ApiResponse<String> execute(final TransportRequest request) throws ApiException {
+    try {
+      return toApiResponse(
+          httpClient.send(toHttpRequest(request), HttpResponse.BodyHandlers.ofString()));
+    } catch (IOException e) {
+      throw new ApiException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ApiException(e);
+    }
+  }
+
+  @Override
+  public CompletableFuture<ApiResponse<String>> executeAsync(final TransportRequest request) {
+    final HttpRequest httpRequest;
+    try {
+      httpRequest = toHttpRequest(request);
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(new ApiException(e));
+    }
+    return httpClient
+        .sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString())
+        .handle(
+            (response, throwable) -> {
+              if (throwable != null) {
+                final Throwable cause =
+                    throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                throw new CompletionException(new ApiException(cause));
+              }
+              try {
+                return toApiResponse(response);
+              } catch (ApiException e) {
+                throw new CompletionException(e);
+              }
+            });
+  }
+
+  /**
+   * Sends concurrent HEAD requests to the url and discards the responses. The client is warmed
+   * once, later calls return the same future unless the warm-up failed.
+   */
+  @Override
+  public CompletableFuture<Duration> warmUp(final String url, final int connections) {
+    final CompletableFuture<Duration> started = new CompletableFuture<>();
+    if (!warmUp.compareAndSet(null, started)) {
+      return warmUp.get();
+    }
+    final long start = System.nanoTime();
+    final HttpRequest head =
+        HttpRequest.newBuilder(URI.create(url))
+            .timeout(requestTimeout)
+            .method("HEAD", HttpRequest.BodyPublishers.noBody())
+            .build();
+    final CompletableFuture<?>[] heads = new CompletableFuture<?>[connections];
+    for (int i = 0; i < connections; i++) {
+      heads[i] = httpClient.sendAsync(head, HttpResponse.BodyHandlers.discarding());
+    }
+    CompletableFuture.allOf(heads)
+        .whenComplete(
+            (ignored, throwable) -> {
+              if (throwable == null) {
+                started.complete(Duration.ofNanos(System.nanoTime() - start));
+              } else {
+                warmUp.compareAndSet(started, null);
+                started.completeExceptionally(throwable);
+              }
+            });
+    return started;
+  }
+
+  /**
+   * The JDK client has no streaming gzip body publisher, a gzip body is compressed into memory
+   * before it is published.
+   */
+  private HttpRequest toHttpRequest(final TransportRequest request) throws IOException {
+    final HttpRequest.Builder builder =
+        HttpRequest.newBuilder(URI.create(request.getUrl())).timeout(requestTimeout);
+    for (final Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      builder.header(header.getKey(), header.getValue());
+    }
+    final HttpRequest.BodyPublisher body;
+    if (request.isGzip()) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream(request.getBodyLength() / 4);
+      request.writeBody(out);
+      body = HttpRequest.BodyPublishers.ofByteArray(out.toByteArray());
+      builder.header("Content-Encoding", "gzip");
+    } else {
+      body =
+          HttpRequest.BodyPublishers.ofByteArray(request.getBody(), 0, request.getBodyLength());
+    }
+    return builder.method(request.getMethod(), body).build();
+  }
+
+  private static ApiResponse<String> toApiResponse(final HttpResponse<String> response)
+      throws ApiException {
+    final int statusCode = response.statusCode();
+    if (statusCode < 200 || statusCode >= 300) {
+      throw new ApiException(
+          "HTTP " + statusCode, statusCode, response.headers().map(), response.body());
+    }
+    return new ApiResponse<>(statusCode, response.headers().map(), response.body());
+  }
+}
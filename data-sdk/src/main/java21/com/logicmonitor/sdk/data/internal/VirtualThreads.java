@@ -0,0 +1,33 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This Class creates executors running every task on a new virtual thread, so a task blocked on
+ * the network holds no platform thread. This is the Java 21 version of the multi-release jar.
+ */
+public final class VirtualThreads {
+
+  private VirtualThreads() {}
+
+  /** @return true when the running JVM provides virtual threads */
+  public static boolean isSupported() {
+    return true;
+  }
+
+  /**
+   * @param prefix name of the threads, followed by their number
+   * @return ExecutorService starting a virtual thread per task
+   */
+  public static ExecutorService newExecutor(final String prefix) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 1).factory());
+  }
+}
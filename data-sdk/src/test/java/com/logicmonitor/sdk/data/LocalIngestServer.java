@@ -0,0 +1,110 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An HttpServer on a free loopback port for the tests of what goes over the wire. It answers
+ * INGEST_PATH with the status set, 202 unless changed, and keeps the headers and body of the last
+ * request. More contexts can be added through getServer() before start().
+ */
+public final class LocalIngestServer {
+
+  public static final String INGEST_PATH = "/rest/v2/metric/ingest";
+
+  private final HttpServer server;
+  private final AtomicReference<Headers> receivedHeaders = new AtomicReference<>();
+  private final AtomicReference<byte[]> receivedBody = new AtomicReference<>();
+  private final AtomicInteger status = new AtomicInteger(202);
+
+  /** @throws IOException */
+  public LocalIngestServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        INGEST_PATH,
+        exchange -> {
+          receivedHeaders.set(exchange.getRequestHeaders());
+          receivedBody.set(readAll(exchange.getRequestBody()));
+          exchange.sendResponseHeaders(status.get(), -1);
+          exchange.close();
+        });
+  }
+
+  /** @return the underlying HttpServer, for contexts and an executor of the test's own */
+  public HttpServer getServer() {
+    return server;
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+
+  /**
+   * @param path
+   * @return URL of path on this server
+   */
+  public String url(final String path) {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+  }
+
+  /** @param status answer to the following ingest requests */
+  public void setStatus(final int status) {
+    this.status.set(status);
+  }
+
+  /**
+   * @param name
+   * @return first value of the header in the last ingest request, null when it had none
+   */
+  public String getHeader(final String name) {
+    final Headers headers = receivedHeaders.get();
+    return headers == null ? null : headers.getFirst(name);
+  }
+
+  /** @return body of the last ingest request as received */
+  public byte[] getBody() {
+    return receivedBody.get();
+  }
+
+  /**
+   * @return body of the last ingest request, decompressed
+   * @throws IOException
+   */
+  public byte[] getGunzippedBody() throws IOException {
+    return readAll(new GZIPInputStream(new ByteArrayInputStream(receivedBody.get())));
+  }
+
+  /**
+   * @param in
+   * @return every byte left in the stream
+   * @throws IOException
+   */
+  public static byte[] readAll(final InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+}
@@ -7,6 +7,9 @@
  */
 package com.logicmonitor.sdk.data;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
@@ -82,4 +85,20 @@ public class TestConfiguration {
     String actualToken = conf.getAuthToken("POST", "POST", "/v2/metric/ingest");
     Assertions.assertEquals(expectedToken, actualToken);
   }
+
+  @Test
+  public void testLMv1AuthFromBuffer() throws Exception {
+    String accessKey = "[KC5sdqL-vX25-35pP2gmPw(f_15W(]LLg(B4Kc8";
+    new Configuration("company01", "5t5U5jH6Q92P2n8x8tg5", accessKey, null, "logicmonitor.com");
+    byte[] json = body.getBytes(StandardCharsets.UTF_8);
+    byte[] buffer = Arrays.copyOf(json, json.length + 64);
+    String token = Configuration.getAuthToken(buffer, json.length, "POST", "/v2/metric/ingest");
+    String epoch = token.substring(token.lastIndexOf(':') + 1);
+    String signature =
+        Base64.getEncoder()
+            .encodeToString(
+                Configuration.encodeSHA256(accessKey, "POST" + epoch + body + "/v2/metric/ingest")
+                    .getBytes());
+    Assertions.assertEquals("LMv1 5t5U5jH6Q92P2n8x8tg5:" + signature + ":" + epoch, token);
+  }
 }
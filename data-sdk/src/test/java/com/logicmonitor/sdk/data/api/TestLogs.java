@@ -10,11 +10,19 @@ package com.logicmonitor.sdk.data.api;
 import com.logicmonitor.sdk.data.Configuration;
 import com.logicmonitor.sdk.data.internal.BatchingCache;
 import com.logicmonitor.sdk.data.model.*;
+import com.logicmonitor.sdk.data.transport.InMemoryTransport;
+import com.logicmonitor.sdk.data.transport.TransportRequest;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import org.junit.Assert;
 import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
 import org.mockito.Mockito;
+import org.openapitools.client.ApiCallback;
 import org.openapitools.client.ApiClient;
 import org.openapitools.client.ApiException;
 
@@ -191,4 +199,124 @@ public class TestLogs {
     Mockito.verify(batchingCache, Mockito.times(0))
         .makeRequest(list, "/v2/metric/ingest", "POST", true, false, Configuration.getgZip());
   }
+
+  @Test
+  public void testRingBuffer() throws IOException, ApiException {
+    Configuration.setRingBufferSize(16);
+    Logs ringed;
+    try {
+      ringed = new Logs(Configuration.getConfiguration(), 3600, true);
+    } finally {
+      Configuration.setRingBufferSize(0);
+    }
+    ringed.getScheduler().close();
+    resourceIds.put("system.hostname", "host-1");
+    for (int i = 0; i < 20; i++) {
+      ringed.sendLogs("message " + i, "info", resourceIds, null, 1789765436000L + i);
+    }
+    // 16 records fit, the ring drops the others without blocking
+    Assertions.assertEquals(4, ringed.getDroppedRequests());
+    Assertions.assertEquals(16, ringed.commonMergeRequest());
+    Assertions.assertEquals(16, ringed.getLogPayloadCache().size());
+    LogsInput first = ringed.getLogPayloadCache().get(0);
+    Assertions.assertEquals("message 0", first.getMessage());
+    Assertions.assertEquals("1789765436000", first.getTimeStamp());
+    Assertions.assertSame(resourceIds, first.getResourceId());
+  }
+
+  @Test
+  public void testOffHeapStaging() throws Exception {
+    Configuration.setOffHeapStagingBytes(4096);
+    Logs staging;
+    try {
+      staging = new Logs(Configuration.getConfiguration(), 3600, true);
+    } finally {
+      Configuration.setOffHeapStagingBytes(0);
+    }
+    InMemoryTransport transport = new InMemoryTransport();
+    staging.setTransport(transport);
+    staging.getScheduler().close();
+    resourceIds.put("system.hostname", "host-1");
+    staging.addRequest(new LogsInput("first log", "info", resourceIds, "1789765436", null));
+    staging.addRequest(new LogsInput("second log", "info", resourceIds, "1789765437", null));
+    Assertions.assertEquals(2, staging.commonMergeRequest());
+    Assertions.assertTrue(staging.getLogPayloadCache().isEmpty());
+
+    Assertions.assertTrue(staging.close(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, transport.getRequestCount());
+    TransportRequest request = transport.getLastRequest();
+    String body =
+        new String(request.getBody(), 0, request.getBodyLength(), StandardCharsets.UTF_8);
+    Assertions.assertTrue(body.indexOf("first log") < body.indexOf("second log"), body);
+    Assertions.assertTrue(body.contains("host-1"), body);
+  }
+
+  @Test
+  public void testCachesOnHeapWhileBothStagesAreSent() throws Exception {
+    Configuration.setOffHeapStagingBytes(4096);
+    Logs staging;
+    try {
+      staging = new Logs(Configuration.getConfiguration(), 3600, true);
+    } finally {
+      Configuration.setOffHeapStagingBytes(0);
+    }
+    InMemoryTransport transport = new InMemoryTransport();
+    staging.setTransport(transport);
+    staging.getScheduler().close();
+    resourceIds.put("system.hostname", "host-1");
+    staging.addRequest(new LogsInput("first log", "info", resourceIds, "1789765436", null));
+    staging.commonMergeRequest();
+    Supplier<CompletableFuture<Void>> first = staging.detachCache();
+    staging.addRequest(new LogsInput("second log", "info", resourceIds, "1789765437", null));
+    staging.commonMergeRequest();
+    // neither the stage nor its spare has been sent yet
+    Supplier<CompletableFuture<Void>> second = staging.detachCache();
+    staging.addRequest(new LogsInput("third log", "info", resourceIds, "1789765438", null));
+    Assertions.assertEquals(1, staging.commonMergeRequest());
+    Assertions.assertEquals(1, staging.getLogPayloadCache().size());
+
+    second.get();
+    first.get();
+    Assertions.assertTrue(staging.close(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(3, transport.getRequestCount());
+    TransportRequest request = transport.getLastRequest();
+    String body =
+        new String(request.getBody(), 0, request.getBodyLength(), StandardCharsets.UTF_8);
+    Assertions.assertTrue(body.contains("third log"), body);
+  }
+
+  @Test
+  public void testEncodedSizeMatchesPayload() throws Exception {
+    Logs sized = new Logs(Configuration.getConfiguration(), 3600, true);
+    InMemoryTransport transport = new InMemoryTransport();
+    sized.setTransport(transport);
+    sized.getScheduler().close();
+    resourceIds.put("system.hostname", "host-1");
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("service", "checkout <eu>");
+    metadata.put("log_level", "warn");
+    metadata.put("skipped", null);
+    sized.addRequest(new LogsInput("first log", "info", resourceIds, "1789765436", null));
+    sized.addRequest(new LogsInput("second \"log\"", "info", resourceIds, null, metadata));
+    Assertions.assertEquals(2, sized.commonMergeRequest());
+    long encoded = sized.getEncodedBytes();
+
+    Assertions.assertTrue(sized.close(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, transport.getRequestCount());
+    Assertions.assertEquals(encoded, transport.getLastRequest().getBodyLength());
+  }
+
+  @Test
+  public void testFlushFailureReachesCallback() throws Exception {
+    ApiCallback apiCallback = Mockito.mock(ApiCallback.class);
+    Logs failing = new Logs(Configuration.getConfiguration(), 3600, true, apiCallback);
+    failing.setTransport(new InMemoryTransport(400));
+    failing.getScheduler().close();
+    failing.addRequest(new LogsInput("rejected log", "info", resourceIds, "1789765436", null));
+    Assertions.assertEquals(1, failing.commonMergeRequest());
+
+    Assertions.assertTrue(failing.close(5, TimeUnit.SECONDS));
+    Mockito.verify(apiCallback, Mockito.timeout(5000))
+        .onFailure(Mockito.any(), Mockito.eq(400), Mockito.any());
+  }
 }
@@ -15,18 +15,26 @@ import com.logicmonitor.sdk.data.model.DataSourceInstance;
 import com.logicmonitor.sdk.data.model.Input;
 import com.logicmonitor.sdk.data.model.MetricsInput;
 import com.logicmonitor.sdk.data.model.Resource;
+import com.logicmonitor.sdk.data.transport.InMemoryTransport;
+import com.logicmonitor.sdk.data.transport.TransportRequest;
 import com.logicmonitor.sdk.data.validator.DataSourceInstanceValidator;
 import com.logicmonitor.sdk.data.validator.DataSourceValidator;
 import com.logicmonitor.sdk.data.validator.ResourceValidator;
 import com.logicmonitor.sdk.data.validator.Validator;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
 import org.mockito.Mockito;
@@ -126,6 +134,40 @@ public class TestMetrics {
     Assert.assertTrue("This will succeed.", true);
   }
 
+  private MetricsInput freshInput(final String timestamp, final String value) {
+    final Map<String, String> ids = new HashMap<>();
+    ids.put("system.displayname", resourceName);
+    final MetricsInput input = new MetricsInput();
+    input.setResource(Resource.builder().ids(ids).name(resourceName).build());
+    input.setDataSource(DataSource.builder().name(dataSourceName).singleInstanceDS(false).build());
+    input.setDataSourceInstance(DataSourceInstance.builder().name(instanceName).build());
+    input.setDataPoint(DataPoint.builder().name(cpuUsage).build());
+    input.getValues().put(timestamp, value);
+    return input;
+  }
+
+  @Test
+  public void testMergeRequestCoalescesEqualDescriptors() {
+    setPayload();
+    Queue<Input> rawRequest = new LinkedList<>();
+    rawRequest.add(freshInput("1646816195", "10"));
+    rawRequest.add(freshInput("1646816255", "20"));
+    Mockito.when(metrics.getRequest()).thenReturn(rawRequest);
+    metrics.mergeRequest();
+    metrics.mergeRequest();
+
+    Assertions.assertEquals(1, metrics.getPayloadCache().size());
+    Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>> dataSources =
+        metrics.getPayloadCache().values().iterator().next();
+    Assertions.assertEquals(1, dataSources.size());
+    Map<DataPoint, Map<String, String>> dataPoints =
+        dataSources.values().iterator().next().values().iterator().next();
+    Assertions.assertEquals(1, dataPoints.size());
+    Map<String, String> values = dataPoints.values().iterator().next();
+    Assertions.assertEquals(2, values.size());
+    Assertions.assertEquals("20", values.get("1646816255"));
+  }
+
   void setConf() {
     Mockito.when(conf.setCompany()).thenReturn("https://company01.test.com/rest");
   }
@@ -260,4 +302,239 @@ public class TestMetrics {
             resourceIds, dataSourceName, null, instanceName, instanceProperties, false);
     Assertions.assertEquals(response.getStatusCode(), 400);
   }
+
+  private MetricsInput input(String resourceId) {
+    Map<String, String> ids = new HashMap<>();
+    ids.put("system.hostname", resourceId);
+    MetricsInput input = new MetricsInput();
+    input.setResource(Resource.builder().ids(ids).name(resourceId).build());
+    input.setDataSource(dataSource);
+    input.setDataSourceInstance(dataSourceInstance);
+    input.setDataPoint(dataPoint);
+    input.setValues(values);
+    return input;
+  }
+
+  @Test
+  public void testShardedCache() {
+    int cacheShards = Configuration.getCacheShards();
+    Configuration.setCacheShards(4);
+    Metrics sharded;
+    try {
+      sharded = new Metrics(Configuration.getConfiguration(), 3600, true);
+    } finally {
+      Configuration.setCacheShards(cacheShards);
+    }
+    InMemoryTransport transport = new InMemoryTransport();
+    sharded.setTransport(transport);
+
+    // every metric of a resource is merged by the same shard
+    Assertions.assertSame(sharded.route(input("host-1")), sharded.route(input("host-1")));
+    Assertions.assertNotSame(sharded, sharded.route(input("host-1")));
+    Assertions.assertEquals(4, sharded.shards().size());
+    for (BatchingCache shard : sharded.shards()) {
+      Assertions.assertSame(transport, shard.getTransport());
+      Assertions.assertSame(sharded.getLimiter(), shard.getLimiter());
+      Assertions.assertSame(sharded.getAdaptive(), shard.getAdaptive());
+      Assertions.assertEquals(sharded.getInterval(), shard.getInterval());
+    }
+
+    dataSource.setName(dataSourceName);
+    dataSourceInstance.setName(instanceName);
+    dataPoint.setName(cpuUsage);
+    values.put("1646816195", "10");
+    for (int i = 0; i < 16; i++) {
+      sharded.addRequest(input("host-" + i));
+    }
+    Assertions.assertTrue(sharded.close(5, TimeUnit.SECONDS));
+    Assertions.assertTrue(transport.getRequestCount() >= 1);
+    Assertions.assertEquals(0, sharded.getLimiter().getBuffered());
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+    return ((com.sun.management.ThreadMXBean) threads)
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * @param ringBufferSize
+   * @return fewest bytes allocated by the emitting thread in a round of 4000 sendMetrics calls,
+   *     after warm-up rounds
+   */
+  private long emitAllocation(int ringBufferSize) throws Exception {
+    Configuration.setRingBufferSize(ringBufferSize);
+    Metrics emitting;
+    try {
+      emitting = new Metrics(Configuration.getConfiguration(), 3600, true);
+    } finally {
+      Configuration.setRingBufferSize(0);
+    }
+    InMemoryTransport transport = new InMemoryTransport();
+    emitting.setTransport(transport);
+    // the test merges, so only the emit path runs between the measurements
+    emitting.getScheduler().close();
+    Resource host = input("host-1").getResource();
+    long fewest = Long.MAX_VALUE;
+    for (int round = 0; round < 10; round++) {
+      long before = allocatedBytes();
+      for (int i = 0; i < 4000; i++) {
+        emitting.sendMetrics(host, dataSource, dataSourceInstance, dataPoint, values);
+      }
+      long allocated = allocatedBytes() - before;
+      Assertions.assertEquals(4000, emitting.commonMergeRequest());
+      // the first rounds warm up
+      if (round >= 5) {
+        fewest = Math.min(fewest, allocated);
+      }
+    }
+    Assertions.assertEquals(1, emitting.getPayloadCache().size());
+    Assertions.assertTrue(emitting.close(5, TimeUnit.SECONDS));
+    Assertions.assertTrue(transport.getRequestCount() >= 1);
+    Assertions.assertEquals(0, emitting.getDroppedRequests());
+    return fewest;
+  }
+
+  @Test
+  public void testRingBufferEmitAllocatesLessThanQueue() throws Exception {
+    dataSource.setName(dataSourceName);
+    dataSource.setSingleInstanceDS(false);
+    dataSourceInstance.setName(instanceName);
+    dataPoint.setName(cpuUsage);
+    values.put("1646816195", "10");
+    long queued = emitAllocation(0);
+    long ringed = emitAllocation(4096);
+    // compared with the queue rather than to zero, the counter itself allocates a little
+    Assertions.assertTrue(
+        ringed * 4 < queued, "ring buffer " + ringed + " bytes, queue " + queued + " bytes");
+  }
+
+  @Test
+  public void testRegisterAndRecord() throws Exception {
+    Metrics registering = new Metrics(Configuration.getConfiguration(), 3600, true);
+    registering.setTransport(new InMemoryTransport());
+    registering.getScheduler().close();
+    MetricsInput series = freshInput("1646816195", "10");
+    long handle =
+        registering.register(
+            series.getResource(),
+            series.getDataSource(),
+            series.getDataSourceInstance(),
+            series.getDataPoint());
+    MetricsInput same = freshInput("1646816195", "10");
+    Assertions.assertEquals(
+        handle,
+        registering.register(
+            same.getResource(),
+            same.getDataSource(),
+            same.getDataSourceInstance(),
+            same.getDataPoint()));
+
+    // the registered copy is frozen
+    series.getResource().setName("renamed");
+    registering.record(handle, 1646816195L, 10);
+    registering.record(handle, 1646816255L, 20.5);
+    Assertions.assertEquals(2, registering.commonMergeRequest());
+    registering.record(handle, 1646816315L, 30);
+    Assertions.assertEquals(1, registering.commonMergeRequest());
+
+    Assertions.assertEquals(1, registering.getPayloadCache().size());
+    Resource cached = registering.getPayloadCache().keySet().iterator().next();
+    Assertions.assertEquals(resourceName, cached.getName());
+    Map<DataPoint, Map<String, String>> dataPoints =
+        registering.getPayloadCache().get(cached).values().iterator().next().values().iterator()
+            .next();
+    Map<String, String> values = dataPoints.values().iterator().next();
+    Assertions.assertEquals(3, values.size());
+    Assertions.assertEquals("20.5", values.get("1646816255"));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> registering.record(handle + 1, 1646816195L, 1));
+    registering.close();
+  }
+
+  @Test
+  public void testRegisterValidatesOnce() {
+    Metrics registering = new Metrics(Configuration.getConfiguration(), 3600, true);
+    registering.getScheduler().close();
+    MetricsInput invalid = freshInput("1646816195", "10");
+    invalid.getDataSource().setName(null);
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            registering.register(
+                invalid.getResource(),
+                invalid.getDataSource(),
+                invalid.getDataSourceInstance(),
+                invalid.getDataPoint()));
+    registering.close();
+  }
+
+  @Test
+  public void testOffHeapStaging() throws Exception {
+    Configuration.setOffHeapStagingBytes(4096);
+    Metrics staging;
+    try {
+      staging = new Metrics(Configuration.getConfiguration(), 3600, true);
+    } finally {
+      Configuration.setOffHeapStagingBytes(0);
+    }
+    InMemoryTransport transport = new InMemoryTransport();
+    staging.setTransport(transport);
+    staging.getScheduler().close();
+
+    MetricsInput first = freshInput("1646816195", "10");
+    MetricsInput second = freshInput("1646816255", "n/a");
+    second.getValues().put("1646816315", "20.0");
+    staging.addRequest(first);
+    staging.addRequest(second);
+    Assertions.assertEquals(2, staging.commonMergeRequest());
+    // only the value that would not read back as given is on the heap
+    Map<DataSource, Map<DataSourceInstance, Map<DataPoint, Map<String, String>>>> dataSources =
+        staging.getPayloadCache().values().iterator().next();
+    Map<DataPoint, Map<String, String>> dataPoints =
+        dataSources.values().iterator().next().values().iterator().next();
+    Assertions.assertEquals(1, dataPoints.values().iterator().next().size());
+
+    Assertions.assertTrue(staging.close(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, transport.getRequestCount());
+    TransportRequest request = transport.getLastRequest();
+    String body =
+        new String(request.getBody(), 0, request.getBodyLength(), StandardCharsets.UTF_8);
+    Assertions.assertTrue(body.contains("\"1646816195\":\"10\""), body);
+    Assertions.assertTrue(body.contains("\"1646816255\":\"n/a\""), body);
+    Assertions.assertTrue(body.contains("\"1646816315\":\"20.0\""), body);
+  }
+
+  @Test
+  public void testEncodedSizeMatchesPayload() throws Exception {
+    Metrics sized = new Metrics(Configuration.getConfiguration(), 3600, true);
+    InMemoryTransport transport = new InMemoryTransport();
+    sized.setTransport(transport);
+    sized.getScheduler().close();
+
+    MetricsInput first = freshInput("1646816195", "10");
+    first.getValues().put("1646816255", "n/a <1>");
+    MetricsInput replacing = freshInput("1646816195", "10.5");
+    MetricsInput otherPoint = freshInput("1646816195", "1");
+    otherPoint.getDataPoint().setName("memUsage");
+    MetricsInput otherInstance = freshInput("1646816195", "2");
+    otherInstance.getDataSourceInstance().setName("Second \u00e9 Instance");
+    MetricsInput otherDataSource = freshInput("1646816195", "3");
+    otherDataSource.getDataSource().setName("Other DataSource");
+    MetricsInput otherResource = freshInput("1646816195", "4");
+    otherResource.getResource().getIds().put("system.displayname", "other");
+    for (final MetricsInput input :
+        Arrays.asList(
+            first, replacing, otherPoint, otherInstance, otherDataSource, otherResource)) {
+      sized.addRequest(input);
+    }
+    Assertions.assertEquals(6, sized.commonMergeRequest());
+    long encoded = sized.getEncodedBytes();
+
+    Assertions.assertTrue(sized.close(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, transport.getRequestCount());
+    Assertions.assertEquals(encoded, transport.getLastRequest().getBodyLength());
+    Assertions.assertEquals(0, sized.getEncodedBytes());
+  }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.api;
+
+import com.logicmonitor.sdk.data.Configuration;
+import com.logicmonitor.sdk.data.model.DataPoint;
+import com.logicmonitor.sdk.data.model.DataSource;
+import com.logicmonitor.sdk.data.model.DataSourceInstance;
+import com.logicmonitor.sdk.data.model.MetricsInput;
+import com.logicmonitor.sdk.data.model.Resource;
+import com.logicmonitor.sdk.data.transport.InMemoryTransport;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.reactivestreams.Subscription;
+
+public class TestReactiveSubscriber {
+
+  private final AtomicLong requested = new AtomicLong();
+
+  private final AtomicBoolean cancelled = new AtomicBoolean();
+
+  private final Subscription subscription =
+      new Subscription() {
+        @Override
+        public void request(long n) {
+          requested.addAndGet(n);
+        }
+
+        @Override
+        public void cancel() {
+          cancelled.set(true);
+        }
+      };
+
+  private static MetricsInput input(String resourceId) {
+    Map<String, String> ids = new HashMap<>();
+    ids.put("system.hostname", resourceId);
+    Map<String, String> values = new HashMap<>();
+    values.put("1646816195", "10");
+    MetricsInput input = new MetricsInput();
+    input.setResource(Resource.builder().ids(ids).name(resourceId).build());
+    input.setDataSource(DataSource.builder().name("Java Data SDK").singleInstanceDS(false).build());
+    input.setDataSourceInstance(
+        DataSourceInstance.builder().name("Java Data SDK Instance").build());
+    input.setDataPoint(DataPoint.builder().name("cpuUsage").build());
+    input.setValues(values);
+    return input;
+  }
+
+  @Test
+  public void testSubscriberSendsWithinDemand() {
+    Metrics metrics = new Metrics(Configuration.getConfiguration(), 3600, true);
+    InMemoryTransport transport = new InMemoryTransport();
+    metrics.setTransport(transport);
+    ReactiveSubscriber<MetricsInput> subscriber = metrics.subscriber();
+
+    subscriber.onSubscribe(subscription);
+    Assertions.assertTrue(requested.get() > 0);
+    Assertions.assertTrue(requested.get() <= Configuration.getBufferCapacity());
+    for (int i = 0; i < 10; i++) {
+      subscriber.onNext(input("host-" + i));
+    }
+    // an invalid input is skipped, the subscription stays open
+    subscriber.onNext(new MetricsInput());
+    subscriber.onComplete();
+    Assertions.assertFalse(cancelled.get());
+
+    Assertions.assertTrue(metrics.close(5, TimeUnit.SECONDS));
+    Assertions.assertTrue(transport.getRequestCount() >= 1);
+    Assertions.assertEquals(0, metrics.getLimiter().getBuffered());
+  }
+
+  @Test
+  public void testSecondSubscriptionIsCancelled() {
+    ReactiveSubscriber<MetricsInput> subscriber =
+        new Metrics(Configuration.getConfiguration(), 3600, true).subscriber();
+    subscriber.onSubscribe(subscription);
+    AtomicBoolean second = new AtomicBoolean();
+    subscriber.onSubscribe(
+        new Subscription() {
+          @Override
+          public void request(long n) {
+            Assertions.fail("second subscription must not be requested from");
+          }
+
+          @Override
+          public void cancel() {
+            second.set(true);
+          }
+        });
+    Assertions.assertTrue(second.get());
+    subscriber.cancel();
+    Assertions.assertTrue(cancelled.get());
+  }
+
+  @Test
+  public void testNullItemIsRejected() {
+    ReactiveSubscriber<MetricsInput> subscriber =
+        new Metrics(Configuration.getConfiguration(), 3600, true).subscriber();
+    subscriber.onSubscribe(subscription);
+    Assertions.assertThrows(NullPointerException.class, () -> subscriber.onNext(null));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import com.logicmonitor.sdk.data.Constant;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.openapitools.client.ApiException;
+
+public class TestAdaptiveBatching {
+
+  private static final long HARD_LIMIT = Constant.DEFAULT_PUSHMETRICS_MAXIMUM_METRICS_PAYLOAD_SIZE;
+
+  @Test
+  public void testSlowResponsesShrinkBatches() {
+    AdaptiveBatching adaptive = new AdaptiveBatching(10000);
+    Assertions.assertEquals(HARD_LIMIT, adaptive.payloadLimit(HARD_LIMIT));
+    adaptive.onResponse(Configuration.getTargetLatency() + 1, false);
+    Assertions.assertEquals(HARD_LIMIT / 2, adaptive.payloadLimit(HARD_LIMIT));
+    Assertions.assertEquals(Configuration.getFlushThreshold() / 2, adaptive.flushThreshold());
+    for (int i = 0; i < 20; i++) {
+      adaptive.onResponse(Configuration.getTargetLatency() + 1, false);
+    }
+    Assertions.assertEquals(
+        (long) (HARD_LIMIT * AdaptiveBatching.MIN_FRACTION), adaptive.payloadLimit(HARD_LIMIT));
+    Assertions.assertEquals(10000, adaptive.intervalMillis());
+  }
+
+  @Test
+  public void testFastResponsesGrowBatchesAdditively() {
+    AdaptiveBatching adaptive = new AdaptiveBatching(10000);
+    adaptive.onResponse(0, true);
+    adaptive.onResponse(0, true);
+    Assertions.assertEquals(HARD_LIMIT / 4, adaptive.payloadLimit(HARD_LIMIT));
+    adaptive.onResponse(1, false);
+    Assertions.assertEquals(
+        (long) (HARD_LIMIT * (0.25 + AdaptiveBatching.MIN_FRACTION)),
+        adaptive.payloadLimit(HARD_LIMIT));
+    for (int i = 0; i < 20; i++) {
+      adaptive.onResponse(1, false);
+    }
+    Assertions.assertEquals(HARD_LIMIT, adaptive.payloadLimit(HARD_LIMIT));
+  }
+
+  @Test
+  public void testFailuresBackOffInterval() {
+    AdaptiveBatching adaptive = new AdaptiveBatching(10000);
+    adaptive.onResponse(0, true);
+    Assertions.assertEquals(20000, adaptive.intervalMillis());
+    for (int i = 0; i < 10; i++) {
+      adaptive.onResponse(0, true);
+    }
+    Assertions.assertEquals(40000, adaptive.intervalMillis());
+    // without backlog the interval returns to the configured one
+    for (int i = 0; i < 100; i++) {
+      adaptive.onQueueDepth(0);
+    }
+    Assertions.assertEquals(10000, adaptive.intervalMillis());
+  }
+
+  @Test
+  public void testBacklogShortensInterval() {
+    AdaptiveBatching adaptive = new AdaptiveBatching(10000);
+    adaptive.onQueueDepth(Configuration.getFlushThreshold() + 1);
+    Assertions.assertEquals(10000 - 10000 / 16, adaptive.intervalMillis());
+    for (int i = 0; i < 100; i++) {
+      adaptive.onQueueDepth(Configuration.getFlushThreshold() + 1);
+    }
+    Assertions.assertEquals(
+        Math.max(100, 60000 / Configuration.getRequestPerMinute()), adaptive.intervalMillis());
+  }
+
+  @Test
+  public void testOnlyOverloadsShrinkBatches() {
+    Assertions.assertTrue(AdaptiveBatching.isOverload(new ApiException(new IOException("reset"))));
+    Assertions.assertTrue(AdaptiveBatching.isOverload(status(429)));
+    Assertions.assertTrue(AdaptiveBatching.isOverload(status(503)));
+    Assertions.assertFalse(
+        AdaptiveBatching.isOverload(
+            new ApiException("The number of requests exceeds the rate limit")));
+    Assertions.assertFalse(AdaptiveBatching.isOverload(status(400)));
+    Assertions.assertFalse(AdaptiveBatching.isOverload(status(413)));
+  }
+
+  private static ApiException status(int code) {
+    return new ApiException("HTTP " + code, code, Collections.emptyMap(), "");
+  }
+
+  @Test
+  public void testInvalidTargetLatency() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> Configuration.setTargetLatency(0));
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestAsyncPermits {
+
+  @Test
+  public void testReleaseHandsPermitToWaiter() throws Exception {
+    AsyncPermits permits = new AsyncPermits(() -> 1);
+    Assertions.assertTrue(permits.acquire().isDone());
+    Assertions.assertFalse(permits.tryAcquire());
+    CompletableFuture<Void> waiter = permits.acquire();
+    Assertions.assertFalse(waiter.isDone());
+    Assertions.assertEquals(1, permits.getWaiting());
+
+    permits.release();
+    waiter.get(5, TimeUnit.SECONDS);
+    Assertions.assertEquals(1, permits.getUsed());
+    Assertions.assertEquals(0, permits.getWaiting());
+    permits.release();
+    Assertions.assertEquals(0, permits.getUsed());
+  }
+
+  @Test
+  public void testLoweredLimit() {
+    AtomicInteger limit = new AtomicInteger(2);
+    AsyncPermits permits = new AsyncPermits(limit::get);
+    Assertions.assertTrue(permits.tryAcquire());
+    Assertions.assertTrue(permits.tryAcquire());
+    limit.set(1);
+    CompletableFuture<Void> waiter = permits.acquire();
+    permits.release();
+    // the permit released goes back rather than to the waiter
+    Assertions.assertFalse(waiter.isDone());
+    Assertions.assertEquals(1, permits.getUsed());
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestBatchScheduler {
+
+  private final AtomicInteger merges = new AtomicInteger();
+  private final AtomicInteger flushes = new AtomicInteger();
+  private final CountDownLatch flushed = new CountDownLatch(1);
+  private final int flushThreshold = Configuration.getFlushThreshold();
+  private BatchScheduler scheduler;
+
+  @After
+  public void tearDown() {
+    Configuration.setFlushThreshold(flushThreshold);
+    if (scheduler != null) {
+      scheduler.close();
+    }
+  }
+
+  private BatchScheduler scheduler(int entriesPerMerge, long intervalMillis) {
+    return new BatchScheduler(
+        () -> {
+          merges.incrementAndGet();
+          return entriesPerMerge;
+        },
+        () -> {
+          flushes.incrementAndGet();
+          flushed.countDown();
+        },
+        () -> intervalMillis);
+  }
+
+  @Test
+  public void testFlushOnDeadline() throws InterruptedException {
+    scheduler = scheduler(1, 50);
+    long start = System.nanoTime();
+    scheduler.onArrival();
+    Assertions.assertTrue(flushed.await(5, TimeUnit.SECONDS));
+    Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+    Assertions.assertEquals(1, merges.get());
+    Assertions.assertEquals(1, flushes.get());
+  }
+
+  @Test
+  public void testFlushOnThreshold() throws InterruptedException {
+    Configuration.setFlushThreshold(10);
+    scheduler = scheduler(10, TimeUnit.MINUTES.toMillis(10));
+    scheduler.onArrival();
+    Assertions.assertTrue(flushed.await(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, flushes.get());
+  }
+
+  @Test
+  public void testIdleWhenNothingMerged() throws InterruptedException {
+    scheduler = scheduler(0, 10);
+    scheduler.onArrival();
+    Assertions.assertFalse(flushed.await(200, TimeUnit.MILLISECONDS));
+    Assertions.assertEquals(1, merges.get());
+    Assertions.assertEquals(0, flushes.get());
+  }
+
+  @Test
+  public void testInvalidFlushThreshold() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> Configuration.setFlushThreshold(0));
+  }
+}
@@ -8,25 +8,40 @@
 package com.logicmonitor.sdk.data.internal;
 
 import com.logicmonitor.sdk.data.Configuration;
+import com.logicmonitor.sdk.data.OverflowPolicy;
 import com.logicmonitor.sdk.data.model.Input;
 import com.logicmonitor.sdk.data.model.MetricsInput;
+import com.logicmonitor.sdk.data.transport.InMemoryTransport;
+import com.logicmonitor.sdk.data.transport.Transport;
+import com.logicmonitor.sdk.data.transport.TransportRequest;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.function.Executable;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.openapitools.client.ApiCallback;
 import org.openapitools.client.ApiException;
 import org.openapitools.client.ApiResponse;
+import org.openapitools.client.model.RestMetricsV1;
 
 @RunWith(MockitoJUnitRunner.class)
 public class TestBatchingCache {
@@ -157,6 +172,83 @@ public class TestBatchingCache {
     Assert.assertEquals(var, Boolean.TRUE);
   }
 
+  @Test
+  public void testMakeRequestAsyncRateLimited() {
+    List<String> list = new ArrayList<>();
+    list.add("body");
+    Mockito.doReturn(false).when(batchingCache).checkNumberOfRequest(Mockito.anyString());
+    CompletableFuture<ApiResponse<String>> future =
+        batchingCache.makeRequestAsync(list, "/v2/metric/ingest", "POST", true, false);
+    ExecutionException e = Assertions.assertThrows(ExecutionException.class, future::get);
+    Assertions.assertTrue(e.getCause() instanceof ApiException);
+    Assertions.assertEquals(0, BatchingCache.getInFlightRequests());
+  }
+
+  @Test
+  public void testMakeRequestAsyncInFlightLimit() {
+    List<String> list = new ArrayList<>();
+    list.add("body");
+    int maxInFlightRequests = Configuration.getMaxInFlightRequests();
+    Configuration.setMaxInFlightRequests(1);
+    Mockito.doReturn(true).when(batchingCache).checkNumberOfRequest(Mockito.anyString());
+    Transport neverCompletes =
+        new InMemoryTransport() {
+          @Override
+          public CompletableFuture<ApiResponse<String>> executeAsync(TransportRequest request) {
+            return new CompletableFuture<>();
+          }
+        };
+    Mockito.doReturn(neverCompletes).when(batchingCache).getTransport();
+    try {
+      CompletableFuture<ApiResponse<String>> pending =
+          batchingCache.makeRequestAsync(list, "/v2/metric/ingest", "POST", true, false);
+      CompletableFuture<ApiResponse<String>> rejected =
+          batchingCache.makeRequestAsync(list, "/v2/metric/ingest", "POST", true, false);
+      Assertions.assertFalse(pending.isDone());
+      ExecutionException e = Assertions.assertThrows(ExecutionException.class, rejected::get);
+      Assertions.assertTrue(e.getCause() instanceof RejectedExecutionException);
+      pending.complete(null);
+      Assertions.assertEquals(0, BatchingCache.getInFlightRequests());
+    } finally {
+      Configuration.setMaxInFlightRequests(maxInFlightRequests);
+    }
+  }
+
+  private List<Integer> entries(int count) {
+    List<Integer> entries = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      entries.add(i);
+    }
+    return entries;
+  }
+
+  @Test
+  public void testPartitionSmallFlushIsNotSplit() {
+    Assertions.assertTrue(BatchingCache.partition(new ArrayList<>()).isEmpty());
+    Assertions.assertEquals(1, BatchingCache.partition(entries(10)).size());
+  }
+
+  @Test
+  public void testPartitionLargeFlush() {
+    int flushParallelism = Configuration.getFlushParallelism();
+    try {
+      Configuration.setFlushParallelism(4);
+      List<List<Integer>> parts = BatchingCache.partition(entries(100));
+      Assertions.assertEquals(4, parts.size());
+      int total = 0;
+      for (List<Integer> part : parts) {
+        total += part.size();
+      }
+      Assertions.assertEquals(100, total);
+      Assertions.assertEquals(Integer.valueOf(99), parts.get(3).get(parts.get(3).size() - 1));
+
+      Configuration.setFlushParallelism(1);
+      Assertions.assertEquals(1, BatchingCache.partition(entries(100)).size());
+    } finally {
+      Configuration.setFlushParallelism(flushParallelism);
+    }
+  }
+
   @Test
   public void testUserAgentWithSuffixGreaterThan32Char() {
     String testString = "test-application-application-name-32char";
@@ -168,4 +260,344 @@ public class TestBatchingCache {
     String testString = "test-application";
     Assertions.assertEquals("/test-application", batchingCache.getUserAgentSuffix(testString));
   }
+
+  private static RestMetricsV1 restMetrics(String resourceName) {
+    RestMetricsV1 restMetrics = new RestMetricsV1();
+    restMetrics.setResourceName(resourceName);
+    restMetrics.setResourceIds(Collections.singletonMap("system.displayname", resourceName));
+    restMetrics.setDataSource("Java Data SDK");
+    return restMetrics;
+  }
+
+  private static List<BatchingCache.Payload> payloads() {
+    List<RestMetricsV1> body = new ArrayList<>();
+    body.add(restMetrics("resourceA"));
+    body.add(restMetrics("resourceB"));
+    return Collections.singletonList(
+        new BatchingCache.Payload(body, "/v2/metric/ingest", "POST", true));
+  }
+
+  private static String multiStatus(int code) {
+    return "{\"code\":207,\"message\":\"Some events were not accepted\",\"errors\":[{\"code\":"
+        + code
+        + ",\"message\":\"Rejected\",\"resourceIds\":{\"system.displayname\":\"resourceA\"}}]}";
+  }
+
+  @Test
+  public void testMultiStatusRejectedEntriesGoToCallback() {
+    InMemoryTransport transport = new InMemoryTransport(207, multiStatus(400));
+    Mockito.doReturn(transport).when(batchingCache).getTransport();
+    Mockito.doReturn(true).when(batchingCache).checkNumberOfRequest(Mockito.anyString());
+    batchingCache.setApiCallback(apiCallback);
+
+    batchingCache.sendPayloads(payloads());
+
+    ArgumentCaptor<ApiException> failure = ArgumentCaptor.forClass(ApiException.class);
+    Mockito.verify(apiCallback).onFailure(failure.capture(), Mockito.eq(400), Mockito.anyMap());
+    Assertions.assertTrue(failure.getValue().getResponseBody().contains("resourceA"));
+    Assertions.assertFalse(failure.getValue().getResponseBody().contains("resourceB"));
+    Assertions.assertEquals(1, transport.getRequestCount());
+  }
+
+  @Test
+  public void testMultiStatusResendsOnlyRejectedEntries() throws InterruptedException {
+    List<String> bodies = new CopyOnWriteArrayList<>();
+    Transport transport =
+        new InMemoryTransport() {
+          @Override
+          public CompletableFuture<ApiResponse<String>> executeAsync(TransportRequest request) {
+            bodies.add(
+                new String(request.getBody(), 0, request.getBodyLength(), StandardCharsets.UTF_8));
+            String data = bodies.size() == 1 ? multiStatus(503) : "";
+            int status = bodies.size() == 1 ? 207 : 202;
+            return CompletableFuture.completedFuture(
+                new ApiResponse<>(status, Collections.emptyMap(), data));
+          }
+        };
+    Mockito.doReturn(transport).when(batchingCache).getTransport();
+    Mockito.doReturn(true).when(batchingCache).checkNumberOfRequest(Mockito.anyString());
+    batchingCache.setApiCallback(apiCallback);
+    long retryBaseDelay = Configuration.getRetryBaseDelay();
+    Configuration.setRetryBaseDelay(1);
+    try {
+      batchingCache.sendPayloads(payloads());
+      for (int i = 0; i < 500 && bodies.size() < 2; i++) {
+        Thread.sleep(10);
+      }
+    } finally {
+      Configuration.setRetryBaseDelay(retryBaseDelay);
+    }
+
+    Assertions.assertEquals(2, bodies.size());
+    Assertions.assertTrue(bodies.get(0).contains("resourceB"));
+    Assertions.assertTrue(bodies.get(1).contains("resourceA"));
+    Assertions.assertFalse(bodies.get(1).contains("resourceB"));
+    Mockito.verify(apiCallback, Mockito.never())
+        .onFailure(Mockito.any(), Mockito.anyInt(), Mockito.anyMap());
+  }
+
+  private static BatchingCache boundedCache(List<Input> dropped) {
+    BatchingCache cache =
+        new BatchingCache(null, 10, false) {
+          @Override
+          protected void mergeRequest() {
+            getRequest().remove();
+          }
+
+          @Override
+          protected void doRequest() {}
+
+          @Override
+          protected CompletableFuture<ApiResponse<String>> sendAsync(final Input input) {
+            return CompletableFuture.completedFuture(null);
+          }
+        };
+    cache.setLimiter(new BufferLimiter());
+    cache.setDropCallback((input, count) -> dropped.add(input));
+    return cache;
+  }
+
+  private static List<Input> addThree(OverflowPolicy policy, BatchingCache cache) {
+    int capacity = Configuration.getBufferCapacity();
+    OverflowPolicy overflowPolicy = Configuration.getOverflowPolicy();
+    Configuration.setBufferCapacity(2);
+    Configuration.setOverflowPolicy(policy);
+    List<Input> inputs = new ArrayList<>();
+    try {
+      for (int i = 0; i < 3; i++) {
+        Input input = new MetricsInput();
+        inputs.add(input);
+        cache.addRequest(input);
+      }
+    } finally {
+      Configuration.setBufferCapacity(capacity);
+      Configuration.setOverflowPolicy(overflowPolicy);
+    }
+    return inputs;
+  }
+
+  @Test
+  public void testDropNewest() {
+    List<Input> dropped = new ArrayList<>();
+    BatchingCache cache = boundedCache(dropped);
+    List<Input> inputs = addThree(OverflowPolicy.DROP_NEWEST, cache);
+    Assertions.assertEquals(Collections.singletonList(inputs.get(2)), dropped);
+    Assertions.assertEquals(1, cache.getDroppedRequests());
+    Assertions.assertSame(inputs.get(0), cache.getRequest().poll());
+    Assertions.assertSame(inputs.get(1), cache.getRequest().poll());
+    Assertions.assertNull(cache.getRequest().poll());
+  }
+
+  @Test
+  public void testDropOldest() {
+    List<Input> dropped = new ArrayList<>();
+    BatchingCache cache = boundedCache(dropped);
+    List<Input> inputs = addThree(OverflowPolicy.DROP_OLDEST, cache);
+    Assertions.assertEquals(Collections.singletonList(inputs.get(0)), dropped);
+    Assertions.assertSame(inputs.get(1), cache.getRequest().poll());
+    Assertions.assertSame(inputs.get(2), cache.getRequest().poll());
+    Assertions.assertEquals(2, cache.getLimiter().getBuffered());
+  }
+
+  @Test
+  public void testBlockTimesOut() {
+    List<Input> dropped = new ArrayList<>();
+    BatchingCache cache = boundedCache(dropped);
+    long timeout = Configuration.getOverflowTimeout();
+    Configuration.setOverflowTimeout(50);
+    try {
+      long start = System.nanoTime();
+      addThree(OverflowPolicy.BLOCK, cache);
+      Assertions.assertTrue(System.nanoTime() - start >= 50_000_000L);
+    } finally {
+      Configuration.setOverflowTimeout(timeout);
+    }
+    Assertions.assertEquals(1, dropped.size());
+    Assertions.assertEquals(2, cache.getRequest().size());
+  }
+
+  @Test
+  public void testFlushReleasesCapacity() {
+    List<Input> dropped = new ArrayList<>();
+    BatchingCache cache = boundedCache(dropped);
+    addThree(OverflowPolicy.DROP_NEWEST, cache);
+    Assertions.assertEquals(2, cache.commonMergeRequest());
+    Assertions.assertEquals(2, cache.getLimiter().getBuffered());
+    cache.commonDoRequest();
+    Assertions.assertEquals(0, cache.getLimiter().getBuffered());
+  }
+
+  @Test
+  public void testFlushAndClose() {
+    List<Input> dropped = new ArrayList<>();
+    BatchingCache cache = boundedCache(dropped);
+    addThree(OverflowPolicy.DROP_NEWEST, cache);
+    Assertions.assertTrue(cache.flush(5, TimeUnit.SECONDS));
+    Assertions.assertTrue(cache.getRequest().isEmpty());
+    Assertions.assertEquals(0, cache.getLimiter().getBuffered());
+
+    Assertions.assertTrue(cache.close(5, TimeUnit.SECONDS));
+    cache.addRequest(new MetricsInput());
+    Assertions.assertTrue(cache.getRequest().isEmpty());
+    Assertions.assertEquals(2, dropped.size());
+  }
+
+  @Test
+  public void testMergeContinuesWhileCacheIsSent() throws Exception {
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch sent = new CountDownLatch(1);
+    BatchingCache cache =
+        new BatchingCache(null, 10, false) {
+          @Override
+          protected void mergeRequest() {
+            getRequest().remove();
+          }
+
+          @Override
+          protected void doRequest() {}
+
+          @Override
+          protected CompletableFuture<ApiResponse<String>> sendAsync(final Input input) {
+            return CompletableFuture.completedFuture(null);
+          }
+
+          @Override
+          protected Supplier<CompletableFuture<Void>> detachCache() {
+            return () -> {
+              sending.countDown();
+              try {
+                sent.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return CompletableFuture.completedFuture(null);
+            };
+          }
+        };
+    CompletableFuture<Void> flush = CompletableFuture.runAsync(cache::commonDoRequest);
+    Assertions.assertTrue(sending.await(5, TimeUnit.SECONDS));
+    cache.addRequest(new MetricsInput());
+    CompletableFuture<Integer> merge = CompletableFuture.supplyAsync(cache::commonMergeRequest);
+    Assertions.assertEquals(1, merge.get(5, TimeUnit.SECONDS));
+    Assertions.assertFalse(flush.isDone());
+    sent.countDown();
+    flush.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testFlushOnWorkerDoesNotWaitForSends() throws Exception {
+    CompletableFuture<ApiResponse<String>> answer = new CompletableFuture<>();
+    CountDownLatch flushed = new CountDownLatch(1);
+    BatchingCache cache =
+        new BatchingCache(null, 10, false) {
+          @Override
+          protected void mergeRequest() {}
+
+          @Override
+          protected void doRequest() {}
+
+          @Override
+          protected CompletableFuture<ApiResponse<String>> sendAsync(final Input input) {
+            return CompletableFuture.completedFuture(null);
+          }
+
+          @Override
+          protected Supplier<CompletableFuture<Void>> detachCache() {
+            return () -> {
+              CompletableFuture<Void> sent = sendPayloads(payloads());
+              flushed.countDown();
+              return sent;
+            };
+          }
+
+          @Override
+          public boolean checkNumberOfRequest(String path) {
+            return true;
+          }
+        };
+    cache.setTransport(
+        new InMemoryTransport() {
+          @Override
+          public CompletableFuture<ApiResponse<String>> executeAsync(TransportRequest request) {
+            return answer;
+          }
+        });
+    cache.flushCache();
+    Assertions.assertTrue(flushed.await(5, TimeUnit.SECONDS));
+    Assertions.assertFalse(answer.isDone());
+    answer.complete(new ApiResponse<>(202, Collections.emptyMap(), ""));
+    Assertions.assertTrue(cache.flush(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testOverflowPolicyAppliesWhileFlushIsSent() throws Exception {
+    CompletableFuture<ApiResponse<String>> answer = new CompletableFuture<>();
+    CountDownLatch requested = new CountDownLatch(1);
+    List<Input> dropped = new CopyOnWriteArrayList<>();
+    BatchingCache cache =
+        new BatchingCache(null, 10, false) {
+          @Override
+          protected void mergeRequest() {
+            getRequest().remove();
+          }
+
+          @Override
+          protected void doRequest() {}
+
+          @Override
+          protected CompletableFuture<ApiResponse<String>> sendAsync(final Input input) {
+            return CompletableFuture.completedFuture(null);
+          }
+
+          @Override
+          protected Supplier<CompletableFuture<Void>> detachCache() {
+            return () -> sendPayloads(payloads());
+          }
+
+          @Override
+          public boolean checkNumberOfRequest(String path) {
+            return true;
+          }
+        };
+    cache.setLimiter(new BufferLimiter());
+    cache.setDropCallback((input, count) -> dropped.add(input));
+    cache.setTransport(
+        new InMemoryTransport() {
+          @Override
+          public CompletableFuture<ApiResponse<String>> executeAsync(TransportRequest request) {
+            requested.countDown();
+            return answer;
+          }
+        });
+    int capacity = Configuration.getBufferCapacity();
+    OverflowPolicy overflowPolicy = Configuration.getOverflowPolicy();
+    long timeout = Configuration.getOverflowTimeout();
+    Configuration.setBufferCapacity(2);
+    Configuration.setOverflowTimeout(50);
+    try {
+      cache.addRequest(new MetricsInput());
+      cache.addRequest(new MetricsInput());
+      Assertions.assertEquals(2, cache.commonMergeRequest());
+      cache.flushCache();
+      Assertions.assertTrue(requested.await(5, TimeUnit.SECONDS));
+      // the flushed requests hold their capacity until they are answered
+      Assertions.assertEquals(2, cache.getLimiter().getBuffered());
+      Configuration.setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+      cache.addRequest(new MetricsInput());
+      Configuration.setOverflowPolicy(OverflowPolicy.BLOCK);
+      cache.addRequest(new MetricsInput());
+      Assertions.assertEquals(2, dropped.size());
+
+      answer.complete(new ApiResponse<>(202, Collections.emptyMap(), ""));
+      Assertions.assertTrue(cache.flush(5, TimeUnit.SECONDS));
+      Assertions.assertEquals(0, cache.getLimiter().getBuffered());
+      cache.addRequest(new MetricsInput());
+      Assertions.assertEquals(2, dropped.size());
+      Assertions.assertEquals(1, cache.getLimiter().getBuffered());
+    } finally {
+      Configuration.setBufferCapacity(capacity);
+      Configuration.setOverflowPolicy(overflowPolicy);
+      Configuration.setOverflowTimeout(timeout);
+    }
+  }
 }
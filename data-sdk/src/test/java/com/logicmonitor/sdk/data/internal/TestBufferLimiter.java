@@ -0,0 +1,92 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestBufferLimiter {
+
+  private final int capacity = Configuration.getBufferCapacity();
+
+  @Before
+  public void setUp() {
+    Configuration.setBufferCapacity(100);
+  }
+
+  @After
+  public void tearDown() {
+    Configuration.setBufferCapacity(capacity);
+  }
+
+  @Test
+  public void testCapacity() {
+    BufferLimiter limiter = new BufferLimiter();
+    for (int i = 0; i < 100; i++) {
+      Assertions.assertTrue(limiter.tryAcquire());
+    }
+    Assertions.assertFalse(limiter.tryAcquire());
+    limiter.release(10);
+    Assertions.assertEquals(90, limiter.getBuffered());
+    Assertions.assertTrue(limiter.tryAcquire());
+  }
+
+  @Test
+  public void testSampling() {
+    BufferLimiter limiter = new BufferLimiter();
+    for (int i = 0; i < 50; i++) {
+      Assertions.assertTrue(limiter.tryAcquireSampled());
+    }
+    int admitted = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (limiter.tryAcquireSampled()) {
+        admitted++;
+      }
+    }
+    // admission gets rarer as the buffer fills, it never exceeds the capacity
+    Assertions.assertTrue(admitted > 0 && admitted <= 50);
+    Assertions.assertTrue(limiter.getBuffered() <= 100);
+  }
+
+  @Test
+  public void testAcquireWaitsForRelease() throws Exception {
+    Configuration.setBufferCapacity(1);
+    BufferLimiter limiter = new BufferLimiter();
+    Assertions.assertTrue(limiter.tryAcquire());
+    Assertions.assertFalse(limiter.acquire(10));
+    CompletableFuture<Boolean> waiting =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return limiter.acquire(TimeUnit.SECONDS.toMillis(10));
+              } catch (InterruptedException e) {
+                return false;
+              }
+            });
+    Thread.sleep(50);
+    limiter.release(1);
+    Assertions.assertTrue(waiting.get(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, limiter.getBuffered());
+  }
+
+  @Test
+  public void testUnboundedByDefault() {
+    Assertions.assertEquals(Configuration.UNBOUNDED_BUFFER_CAPACITY, capacity);
+  }
+
+  @Test
+  public void testInvalidCapacity() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> Configuration.setBufferCapacity(0));
+  }
+}
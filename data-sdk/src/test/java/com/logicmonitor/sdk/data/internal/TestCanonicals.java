@@ -0,0 +1,72 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.model.DataPoint;
+import com.logicmonitor.sdk.data.model.DataSource;
+import com.logicmonitor.sdk.data.model.DataSourceInstance;
+import com.logicmonitor.sdk.data.model.Resource;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestCanonicals {
+
+  private static Resource resource(final String host) {
+    final Map<String, String> ids = new HashMap<>();
+    ids.put("system.hostname", host);
+    return Resource.builder().ids(ids).name(host).build();
+  }
+
+  @Test
+  public void testEqualValuesShareOneCopy() {
+    Canonicals canonicals = new Canonicals();
+    Resource first = canonicals.resource(resource("host-1"));
+    Assertions.assertSame(first, canonicals.resource(resource("host-1")));
+    Assertions.assertNotSame(first, canonicals.resource(resource("host-2")));
+
+    DataSource dataSource = canonicals.dataSource(DataSource.builder().name("cpu").build());
+    Assertions.assertSame(
+        dataSource, canonicals.dataSource(DataSource.builder().name("cpu").build()));
+    DataSourceInstance instance =
+        canonicals.instance(DataSourceInstance.builder().name("cpu-0").build());
+    Assertions.assertSame(
+        instance, canonicals.instance(DataSourceInstance.builder().name("cpu-0").build()));
+    DataPoint dataPoint = canonicals.dataPoint(DataPoint.builder().name("usage").build());
+    Assertions.assertSame(
+        dataPoint, canonicals.dataPoint(DataPoint.builder().name("usage").build()));
+    Assertions.assertEquals(5, canonicals.size());
+    Assertions.assertNull(canonicals.resource(null));
+  }
+
+  @Test
+  public void testCopiesDoNotFollowLaterChanges() {
+    Canonicals canonicals = new Canonicals();
+    Resource sent = resource("host-1");
+    Resource canonical = canonicals.resource(sent);
+    Assertions.assertNotSame(sent, canonical);
+
+    sent.getIds().put("system.hostname", "host-2");
+    sent.setName("host-2");
+    Assertions.assertEquals("host-1", canonical.getIds().get("system.hostname"));
+    Assertions.assertEquals("host-1", canonical.getName());
+    Assertions.assertNotSame(canonical, canonicals.resource(sent));
+    Assertions.assertSame(canonical, canonicals.resource(resource("host-1")));
+  }
+
+  @Test
+  public void testDescriptorTypesDoNotMix() {
+    Canonicals canonicals = new Canonicals();
+    canonicals.dataSource(new DataSource());
+    canonicals.instance(new DataSourceInstance());
+    Assertions.assertEquals(2, canonicals.size());
+    canonicals.clear();
+    Assertions.assertEquals(0, canonicals.size());
+  }
+}
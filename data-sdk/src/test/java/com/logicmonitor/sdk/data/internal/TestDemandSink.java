@@ -0,0 +1,129 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import com.logicmonitor.sdk.data.model.Input;
+import com.logicmonitor.sdk.data.model.MetricsInput;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.openapitools.client.ApiResponse;
+
+public class TestDemandSink {
+
+  private final int capacity = Configuration.getBufferCapacity();
+
+  private final AtomicLong requested = new AtomicLong();
+
+  private final AtomicBoolean cancelled = new AtomicBoolean();
+
+  @Before
+  public void setUp() throws InterruptedException {
+    // sends left by other tests take from the in-flight budget
+    Assertions.assertTrue(SdkRuntime.awaitDrained(System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+    Configuration.setBufferCapacity(100);
+  }
+
+  @After
+  public void tearDown() {
+    Configuration.setBufferCapacity(capacity);
+  }
+
+  private static BatchingCache cache(final boolean batch) {
+    BatchingCache cache =
+        new BatchingCache(null, 10, false) {
+          @Override
+          protected void mergeRequest() {}
+
+          @Override
+          protected void doRequest() {}
+
+          @Override
+          protected CompletableFuture<ApiResponse<String>> sendAsync(final Input input) {
+            return CompletableFuture.completedFuture(null);
+          }
+        };
+    if (batch) {
+      cache.setBatch(true);
+      cache.setLimiter(new BufferLimiter());
+    }
+    return cache;
+  }
+
+  private void awaitRequested(final long expected) throws InterruptedException {
+    for (int i = 0; i < 500 && requested.get() < expected; i++) {
+      Thread.sleep(10);
+    }
+    Assertions.assertEquals(expected, requested.get());
+  }
+
+  @Test
+  public void testDemandFollowsFreeCapacity() throws InterruptedException {
+    BatchingCache cache = cache(true);
+    DemandSink<MetricsInput> sink = new DemandSink<>(cache);
+    Assertions.assertTrue(sink.onSubscribe(requested::addAndGet, () -> cancelled.set(true)));
+    Assertions.assertEquals(100, requested.get());
+    for (int i = 0; i < 100; i++) {
+      sink.onNext(new MetricsInput());
+    }
+    // the buffer is full, nothing more is requested until a flush releases it
+    Assertions.assertEquals(100, requested.get());
+    Assertions.assertEquals(100, cache.getRequest().size());
+    Assertions.assertEquals(0, cache.getDroppedRequests());
+    cache.getLimiter().release(60);
+    awaitRequested(160);
+    Assertions.assertEquals(60, sink.getOutstanding());
+  }
+
+  @Test
+  public void testRequestsAgainWhenHalfDelivered() {
+    DemandSink<MetricsInput> sink = new DemandSink<>(cache(true));
+    sink.onSubscribe(requested::addAndGet, () -> cancelled.set(true));
+    for (int i = 0; i < 30; i++) {
+      sink.onNext(new MetricsInput());
+    }
+    // 70 of a credit of 70 still outstanding
+    Assertions.assertEquals(100, requested.get());
+    Configuration.setBufferCapacity(200);
+    sink.onNext(new MetricsInput());
+    Assertions.assertEquals(100 + 169 - 69, requested.get());
+  }
+
+  @Test
+  public void testSecondSubscriptionAndCancel() throws InterruptedException {
+    BatchingCache cache = cache(true);
+    DemandSink<MetricsInput> sink = new DemandSink<>(cache);
+    sink.onSubscribe(requested::addAndGet, () -> cancelled.set(true));
+    Assertions.assertFalse(sink.onSubscribe(requested::addAndGet, () -> {}));
+    for (int i = 0; i < 100; i++) {
+      sink.onNext(new MetricsInput());
+    }
+    sink.cancel();
+    Assertions.assertTrue(cancelled.get());
+    cache.getLimiter().release(100);
+    Thread.sleep(50);
+    Assertions.assertEquals(100, requested.get());
+  }
+
+  @Test
+  public void testRejectedItemDoesNotEndStream() {
+    // without batching items are sent, which this cache does not support
+    DemandSink<MetricsInput> sink = new DemandSink<>(cache(false));
+    sink.onSubscribe(requested::addAndGet, () -> cancelled.set(true));
+    Assertions.assertEquals(Configuration.getMaxInFlightRequests(), requested.get());
+    sink.onNext(new MetricsInput());
+    Assertions.assertFalse(cancelled.get());
+    Assertions.assertEquals(Configuration.getMaxInFlightRequests() - 1, sink.getOutstanding());
+  }
+}
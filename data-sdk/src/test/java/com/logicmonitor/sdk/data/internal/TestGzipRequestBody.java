@@ -0,0 +1,102 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.google.gson.Gson;
+import com.logicmonitor.sdk.data.LocalIngestServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestGzipRequestBody {
+
+  private final Gson gson = new Gson();
+  private LocalIngestServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new LocalIngestServer();
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop();
+  }
+
+  private List<Map<String, String>> payload() {
+    List<Map<String, String>> body = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      Map<String, String> entry = new HashMap<>();
+      entry.put("resourceName", "Java_Data_SDK_Test");
+      entry.put("value", String.valueOf(i));
+      body.add(entry);
+    }
+    return body;
+  }
+
+  @Test
+  public void testCompressedBytesOnTheWire() throws IOException {
+    List<Map<String, String>> body = payload();
+    byte[] json = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+    // like a pooled PayloadBuffer, the array is larger than the JSON it holds
+    byte[] buffer = Arrays.copyOf(json, json.length + 1024);
+    // built the way OkHttpTransport builds a gzip request
+    Request request =
+        new Request.Builder()
+            .url(server.url(LocalIngestServer.INGEST_PATH))
+            .header("Content-Encoding", "gzip")
+            .post(new GzipRequestBody(buffer, json.length, Deflater.DEFAULT_COMPRESSION))
+            .build();
+
+    try (Response response = new OkHttpClient().newCall(request).execute()) {
+      Assertions.assertEquals(202, response.code());
+    }
+
+    byte[] wire = server.getBody();
+    Assertions.assertEquals("gzip", server.getHeader("Content-Encoding"));
+    Assertions.assertEquals((byte) 0x1f, wire[0]);
+    Assertions.assertEquals((byte) 0x8b, wire[1]);
+    Assertions.assertTrue(wire.length < json.length);
+    Assertions.assertArrayEquals(json, server.getGunzippedBody());
+  }
+
+  @Test
+  public void testCompressionLevel() throws IOException {
+    byte[] json = gson.toJson(payload()).getBytes(StandardCharsets.UTF_8);
+    Buffer stored = new Buffer();
+    Buffer best = new Buffer();
+    new GzipRequestBody(json, json.length, Deflater.NO_COMPRESSION).writeTo(stored);
+    new GzipRequestBody(json, json.length, Deflater.BEST_COMPRESSION).writeTo(best);
+    Assertions.assertTrue(best.size() < stored.size());
+
+    // the body streams the same bytes gzip writes
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    GzipRequestBody.gzip(json, json.length, Deflater.BEST_COMPRESSION, gzipped);
+    Assertions.assertArrayEquals(gzipped.toByteArray(), best.readByteArray());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCompressionLevel() {
+    new GzipRequestBody(new byte[0], 0, 10);
+  }
+}
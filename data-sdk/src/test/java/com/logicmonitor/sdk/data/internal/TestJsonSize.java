@@ -0,0 +1,71 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestJsonSize {
+
+  private final Gson gson = new Gson();
+
+  private int encoded(final Object value) {
+    return gson.toJson(value).getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  @Test
+  public void testStringMatchesGson() {
+    List<String> values =
+        Arrays.asList(
+            "",
+            "cpuUsage",
+            "quote \" and \\ backslash",
+            "tab\tline\nfeed\r\b\f",
+            "\u0001\u001f\u007f",
+            "<a href='x'>&=</a>",
+            "caf\u00e9 \u4e2d\u6587",
+            "\u2028\u2029",
+            "\ud83d\ude00 pair",
+            "lone \ud83d surrogate",
+            "\ude00");
+    for (final String value : values) {
+      Assertions.assertEquals(encoded(value), JsonSize.string(value), value);
+    }
+    Assertions.assertEquals(encoded(null), JsonSize.string(null));
+  }
+
+  @Test
+  public void testMapMatchesGson() {
+    Map<String, String> map = new HashMap<>();
+    Assertions.assertEquals(encoded(map), JsonSize.map(map));
+    map.put("1646816195", "10");
+    Assertions.assertEquals(encoded(map), JsonSize.map(map));
+    map.put("system.displayname", "host <1>");
+    map.put("skipped", null);
+    map.put(null, "null key");
+    Assertions.assertEquals(encoded(map), JsonSize.map(map));
+    Assertions.assertEquals(0, JsonSize.member("skipped", null));
+  }
+
+  @Test
+  public void testCompressionRatio() throws Exception {
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      map.put(Long.toString(1646816195L + 60 * i), "10");
+    }
+    Assertions.assertEquals(encoded(map), JsonSize.of(map));
+    double ratio = JsonSize.compressionRatio(map);
+    Assertions.assertTrue(ratio > 0 && ratio < 0.5, Double.toString(ratio));
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestLMv1Signer {
+
+  private static final String ACCESS_ID = "5t5U5jH6Q92P2n8x8tg5";
+  private static final String ACCESS_KEY = "[KC5sdqL-vX25-35pP2gmPw(f_15W(]LLg(B4Kc8";
+  private static final String PATH = "/v2/metric/ingest";
+  private static final String BODY = "[{\"resourceName\":\"Java_Data_SDK_Test\"}]";
+
+  /** Signature computed the way it was before LMv1Signer. */
+  private static String expected(String accessKey, long epoch, String body) throws Exception {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(accessKey.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+    byte[] digest = mac.doFinal(("POST" + epoch + body + PATH).getBytes(StandardCharsets.UTF_8));
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest) {
+      hex.append(String.format("%02x", b));
+    }
+    String signature = Base64.getEncoder().encodeToString(hex.toString().getBytes());
+    return "LMv1 " + ACCESS_ID + ":" + signature + ":" + epoch;
+  }
+
+  private static String sign(String accessKey, long epoch, String body) {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    return LMv1Signer.sign(ACCESS_ID, accessKey, "POST", epoch, bytes, bytes.length, PATH);
+  }
+
+  @Test
+  public void testMatchesConcatenatedSignature() throws Exception {
+    Assertions.assertEquals(
+        expected(ACCESS_KEY, 1646816195000L, BODY), sign(ACCESS_KEY, 1646816195000L, BODY));
+    // the cached Mac is reset between signatures
+    Assertions.assertEquals(
+        expected(ACCESS_KEY, 1646816196000L, ""), sign(ACCESS_KEY, 1646816196000L, ""));
+  }
+
+  @Test
+  public void testKeyChange() throws Exception {
+    sign(ACCESS_KEY, 1646816195000L, BODY);
+    Assertions.assertEquals(
+        expected("anotherAccessKey", 1646816195000L, BODY),
+        sign("anotherAccessKey", 1646816195000L, BODY));
+  }
+
+  @Test
+  public void testSignsOnlyLength() throws Exception {
+    byte[] bytes = (BODY + "trailing garbage").getBytes(StandardCharsets.UTF_8);
+    Assertions.assertEquals(
+        expected(ACCESS_KEY, 1646816195000L, BODY),
+        LMv1Signer.sign(ACCESS_ID, ACCESS_KEY, "POST", 1646816195000L, bytes, BODY.length(), PATH));
+  }
+
+  @Test
+  public void testConcurrentSigning() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Future<?>[] futures = new Future<?>[32];
+      for (int i = 0; i < futures.length; i++) {
+        final long epoch = 1646816195000L + i;
+        futures[i] =
+            executor.submit(
+                () -> {
+                  Assertions.assertEquals(
+                      expected(ACCESS_KEY, epoch, BODY), sign(ACCESS_KEY, epoch, BODY));
+                  return null;
+                });
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testHex() {
+    Assertions.assertArrayEquals(
+        "00ff7f80".getBytes(StandardCharsets.US_ASCII),
+        LMv1Signer.hex(new byte[] {0, (byte) 0xff, 0x7f, (byte) 0x80}));
+  }
+}
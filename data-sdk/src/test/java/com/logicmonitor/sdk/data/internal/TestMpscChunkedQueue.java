@@ -0,0 +1,85 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestMpscChunkedQueue {
+
+  @Test
+  public void testFifoAcrossChunks() {
+    MpscChunkedQueue<Integer> queue = new MpscChunkedQueue<>();
+    Assertions.assertTrue(queue.isEmpty());
+    Assertions.assertNull(queue.poll());
+    int count = MpscChunkedQueue.CHUNK_SIZE * 3 + 7;
+    for (int i = 0; i < count; i++) {
+      queue.add(i);
+    }
+    Assertions.assertEquals(count, queue.size());
+    Assertions.assertEquals(0, queue.peek());
+    int expected = 0;
+    for (Integer value : queue) {
+      Assertions.assertEquals(expected++, value);
+    }
+    for (int i = 0; i < count; i++) {
+      Assertions.assertEquals(i, queue.remove());
+    }
+    Assertions.assertTrue(queue.isEmpty());
+    Assertions.assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testNullRejected() {
+    Assertions.assertThrows(NullPointerException.class, () -> new MpscChunkedQueue<>().add(null));
+  }
+
+  @Test
+  public void testConcurrentProducers() throws Exception {
+    MpscChunkedQueue<long[]> queue = new MpscChunkedQueue<>();
+    int producers = 8;
+    int perProducer = 20000;
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int p = 0; p < producers; p++) {
+        final long producer = p;
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (long i = 0; i < perProducer; i++) {
+                    queue.offer(new long[] {producer, i});
+                  }
+                }));
+      }
+      long[] next = new long[producers];
+      int received = 0;
+      while (received < producers * perProducer) {
+        long[] element = queue.poll();
+        if (element == null) {
+          Thread.yield();
+          continue;
+        }
+        // elements of one producer keep their order
+        Assertions.assertEquals(next[(int) element[0]]++, element[1]);
+        received++;
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      Assertions.assertNull(queue.poll());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
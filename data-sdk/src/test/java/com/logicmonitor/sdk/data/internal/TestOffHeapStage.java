@@ -0,0 +1,73 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.model.LogsInput;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestOffHeapStage {
+
+  @Test
+  public void testLogsReadBackAsPut() {
+    OffHeapStage stage = new OffHeapStage(1024);
+    Map<String, String> resourceId = new HashMap<>();
+    resourceId.put("system.hostname", "hôst-1");
+    Assertions.assertTrue(stage.putLog("disk füll", "error", resourceId, "1789765436", null));
+    Assertions.assertTrue(stage.putLog(null, null, null, null, resourceId));
+    Assertions.assertEquals(2, stage.getRecords());
+
+    List<LogsInput> logs = new ArrayList<>();
+    stage.forEachLog(logs::add);
+    Assertions.assertEquals("disk füll", logs.get(0).getMessage());
+    Assertions.assertEquals("error", logs.get(0).getLogLevel());
+    Assertions.assertEquals(resourceId, logs.get(0).getResourceId());
+    Assertions.assertEquals("1789765436", logs.get(0).getTimeStamp());
+    Assertions.assertNull(logs.get(0).getMetadata());
+    Assertions.assertNull(logs.get(1).getMessage());
+    Assertions.assertEquals(resourceId, logs.get(1).getMetadata());
+  }
+
+  @Test
+  public void testFullStageRejectsWholeRecord() {
+    OffHeapStage stage = new OffHeapStage(64);
+    Assertions.assertTrue(stage.putLog("short", "info", null, "1", null));
+    int used = stage.usedBytes();
+    StringBuilder message = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      message.append('x');
+    }
+    Assertions.assertFalse(stage.putLog(message.toString(), "info", null, "2", null));
+    Assertions.assertEquals(used, stage.usedBytes());
+    Assertions.assertEquals(1, stage.getRecords());
+
+    stage.clear();
+    Assertions.assertEquals(0, stage.getRecords());
+    Assertions.assertEquals(64, stage.remaining());
+  }
+
+  @Test
+  public void testSamples() {
+    OffHeapStage stage = new OffHeapStage(OffHeapStage.SAMPLE_BYTES * 2);
+    Assertions.assertTrue(stage.putSample(0, 1646816195L, 10, false));
+    Assertions.assertTrue(stage.putSample(1, 1646816255L, 10, true));
+    Assertions.assertFalse(stage.putSample(0, 1646816315L, 30, false));
+
+    SampleColumns first = new SampleColumns();
+    SampleColumns second = new SampleColumns();
+    SampleColumns[] columns = {first, second};
+    stage.forEachSample(
+        (entry, epochSeconds, value, decimal) -> columns[entry].add(epochSeconds, value, decimal));
+    Assertions.assertEquals("10", first.get("1646816195"));
+    Assertions.assertEquals("10.0", second.get("1646816255"));
+  }
+}
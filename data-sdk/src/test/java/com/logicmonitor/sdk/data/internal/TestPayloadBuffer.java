@@ -0,0 +1,65 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestPayloadBuffer {
+
+  @Test
+  public void testReleasedBufferIsReused() throws IOException {
+    PayloadBuffer buffer = PayloadBuffer.acquire();
+    buffer.write("[{\"resourceName\":\"Java_Data_SDK_Test\"}]".getBytes(StandardCharsets.UTF_8));
+    byte[] array = buffer.array();
+    buffer.release();
+
+    PayloadBuffer reused = PayloadBuffer.acquire();
+    Assertions.assertSame(array, reused.array());
+    Assertions.assertEquals(0, reused.size());
+    reused.release();
+  }
+
+  @Test
+  public void testToStringDecodesContent() throws IOException {
+    PayloadBuffer buffer = PayloadBuffer.acquire();
+    String json = "[{\"resourceName\":\"Java_Data_SDK_Tést\"}]";
+    buffer.write(json.getBytes(StandardCharsets.UTF_8));
+    Assertions.assertEquals(json, buffer.toString());
+    Assertions.assertTrue(buffer.array().length >= buffer.size());
+    buffer.release();
+  }
+
+  @Test
+  public void testPoolIsBounded() {
+    PayloadBuffer[] buffers = new PayloadBuffer[40];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = PayloadBuffer.acquire();
+    }
+    for (PayloadBuffer buffer : buffers) {
+      buffer.release();
+    }
+    Assertions.assertTrue(PayloadBuffer.pooled() <= 16);
+  }
+
+  @Test
+  public void testPooledBytesAreBounded() {
+    byte[] payload = new byte[9 * 1024 * 1024];
+    PayloadBuffer[] buffers = new PayloadBuffer[4];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = PayloadBuffer.acquire();
+      buffers[i].write(payload, 0, payload.length);
+    }
+    for (PayloadBuffer buffer : buffers) {
+      buffer.release();
+    }
+    Assertions.assertTrue(PayloadBuffer.pooledBytes() <= PayloadBuffer.MAX_POOLED_BYTES);
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.openapitools.client.ApiException;
+
+public class TestRetryPolicy {
+
+  private static ApiException status(int code) {
+    return status(code, Collections.emptyMap());
+  }
+
+  private static ApiException status(int code, Map<String, List<String>> headers) {
+    return new ApiException("HTTP " + code, code, headers, "");
+  }
+
+  @Test
+  public void testRetryableFailures() {
+    Assertions.assertTrue(RetryPolicy.isRetryable(status(429)));
+    Assertions.assertTrue(RetryPolicy.isRetryable(status(408)));
+    Assertions.assertTrue(RetryPolicy.isRetryable(status(500)));
+    Assertions.assertTrue(RetryPolicy.isRetryable(status(503)));
+    Assertions.assertTrue(RetryPolicy.isRetryable(new ApiException(new IOException("reset"))));
+    Assertions.assertFalse(RetryPolicy.isRetryable(status(400)));
+    Assertions.assertFalse(RetryPolicy.isRetryable(status(401)));
+    Assertions.assertFalse(RetryPolicy.isRetryable(status(501)));
+    Assertions.assertFalse(
+        RetryPolicy.isRetryable(new ApiException("The number of requests exceeds the rate limit")));
+  }
+
+  @Test
+  public void testMaxRetries() {
+    RetryPolicy policy = new RetryPolicy();
+    int maxRetries = Configuration.getMaxRetries();
+    Assertions.assertTrue(policy.shouldRetry(status(503), maxRetries));
+    Assertions.assertFalse(policy.shouldRetry(status(503), maxRetries + 1));
+    Assertions.assertFalse(policy.shouldRetry(status(400), 1));
+  }
+
+  @Test
+  public void testRetryBudget() {
+    RetryPolicy policy = new RetryPolicy(2, 0.5);
+    Assertions.assertTrue(policy.shouldRetry(status(503), 1));
+    Assertions.assertTrue(policy.shouldRetry(status(503), 1));
+    Assertions.assertFalse(policy.shouldRetry(status(503), 1));
+    policy.onSuccess();
+    Assertions.assertFalse(policy.shouldRetry(status(503), 1));
+    policy.onSuccess();
+    Assertions.assertTrue(policy.shouldRetry(status(503), 1));
+    for (int i = 0; i < 10; i++) {
+      policy.onSuccess();
+    }
+    Assertions.assertEquals(2, policy.getTokens());
+  }
+
+  @Test
+  public void testFullJitterBackoff() {
+    RetryPolicy policy = new RetryPolicy();
+    long baseDelay = Configuration.getRetryBaseDelay();
+    for (int attempt = 1; attempt <= 4; attempt++) {
+      for (int i = 0; i < 50; i++) {
+        long delay = policy.delayMillis(status(503), attempt);
+        Assertions.assertTrue(delay >= 0);
+        Assertions.assertTrue(delay <= baseDelay << (attempt - 1));
+      }
+    }
+    long maxDelay = Configuration.getRetryMaxDelay();
+    for (int i = 0; i < 50; i++) {
+      Assertions.assertTrue(policy.delayMillis(status(503), 40) <= maxDelay);
+    }
+  }
+
+  @Test
+  public void testRetryAfterSeconds() {
+    Map<String, List<String>> headers =
+        Collections.singletonMap("retry-after", Collections.singletonList("2"));
+    Assertions.assertEquals(2000, new RetryPolicy().delayMillis(status(429, headers), 1));
+  }
+
+  @Test
+  public void testRetryAfterIsCapped() {
+    Map<String, List<String>> headers =
+        Collections.singletonMap("Retry-After", Collections.singletonList("3600"));
+    Assertions.assertEquals(
+        Configuration.getRetryMaxDelay(), new RetryPolicy().delayMillis(status(503, headers), 1));
+  }
+
+  @Test
+  public void testRetryAfterHttpDate() {
+    String date =
+        DateTimeFormatter.RFC_1123_DATE_TIME.format(
+            ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(10));
+    long delay =
+        RetryPolicy.retryAfterMillis(
+            Collections.singletonMap("Retry-After", Collections.singletonList(date)));
+    Assertions.assertTrue(delay > 8000 && delay <= 10000);
+    Assertions.assertEquals(
+        -1,
+        RetryPolicy.retryAfterMillis(
+            Collections.singletonMap("Retry-After", Collections.singletonList("soon"))));
+    Assertions.assertEquals(-1, RetryPolicy.retryAfterMillis(null));
+  }
+}
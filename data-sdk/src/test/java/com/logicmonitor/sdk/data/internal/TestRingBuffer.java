@@ -0,0 +1,112 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestRingBuffer {
+
+  private static class Slot {
+    long value;
+  }
+
+  @Test
+  public void testSizeRoundedUpToPowerOfTwo() {
+    Assertions.assertEquals(1, new RingBuffer<>(1, Slot::new).capacity());
+    Assertions.assertEquals(8, new RingBuffer<>(5, Slot::new).capacity());
+    Assertions.assertEquals(8, new RingBuffer<>(8, Slot::new).capacity());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(0, Slot::new));
+  }
+
+  @Test
+  public void testSlotsAreReused() {
+    RingBuffer<Slot> ring = new RingBuffer<>(4, Slot::new);
+    Set<Slot> slots = new HashSet<>();
+    List<Long> drained = new ArrayList<>();
+    for (long i = 0; i < 20; i++) {
+      long sequence = ring.tryClaim();
+      Assertions.assertEquals(i, sequence);
+      ring.get(sequence).value = i;
+      slots.add(ring.get(sequence));
+      ring.publish(sequence);
+      Assertions.assertEquals(1, ring.drain(slot -> drained.add(slot.value)));
+    }
+    Assertions.assertEquals(4, slots.size());
+    Assertions.assertEquals(20, drained.size());
+    Assertions.assertEquals(19L, drained.get(19));
+  }
+
+  @Test
+  public void testFullRing() {
+    RingBuffer<Slot> ring = new RingBuffer<>(2, Slot::new);
+    ring.publish(ring.tryClaim());
+    ring.publish(ring.tryClaim());
+    Assertions.assertEquals(-1, ring.tryClaim());
+    Assertions.assertEquals(2, ring.size());
+    Assertions.assertEquals(2, ring.drain(slot -> {}));
+    Assertions.assertEquals(0, ring.size());
+    Assertions.assertEquals(2, ring.tryClaim());
+  }
+
+  @Test
+  public void testDrainStopsAtUnpublishedSlot() {
+    RingBuffer<Slot> ring = new RingBuffer<>(8, Slot::new);
+    long first = ring.tryClaim();
+    long second = ring.tryClaim();
+    ring.publish(second);
+    // the second slot waits for the first, records are handed over in sequence order
+    Assertions.assertEquals(0, ring.drain(slot -> {}));
+    ring.publish(first);
+    Assertions.assertEquals(2, ring.drain(slot -> {}));
+  }
+
+  @Test
+  public void testConcurrentProducers() throws Exception {
+    RingBuffer<Slot> ring = new RingBuffer<>(64, Slot::new);
+    int producers = 4;
+    int perProducer = 10000;
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      final long id = p;
+      futures.add(
+          CompletableFuture.runAsync(
+              () -> {
+                for (long i = 0; i < perProducer; i++) {
+                  long sequence;
+                  while ((sequence = ring.tryClaim()) < 0) {
+                    Thread.yield();
+                  }
+                  ring.get(sequence).value = id << 32 | i;
+                  ring.publish(sequence);
+                }
+              }));
+    }
+    long[] last = {-1, -1, -1, -1};
+    int received = 0;
+    while (received < producers * perProducer) {
+      received +=
+          ring.drain(
+              slot -> {
+                int id = (int) (slot.value >>> 32);
+                long i = slot.value & 0xffffffffL;
+                // each producer's records arrive in the order they were published
+                Assertions.assertEquals(last[id] + 1, i);
+                last[id] = i;
+              });
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    Assertions.assertEquals(0, ring.size());
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestSampleColumns {
+
+  @Test
+  public void testValuesReadBackAsPut() {
+    SampleColumns columns = new SampleColumns();
+    columns.put("1646816195", "10");
+    columns.put("1646816255", "20.5");
+    columns.put("1646816315", "10.0");
+    // kept as Strings, they would not read back the same
+    columns.put("1646816375", "10.50");
+    columns.put("01646816435", "1");
+    columns.put("1646816495", "n/a");
+
+    Map<String, String> expected = new HashMap<>();
+    expected.put("1646816195", "10");
+    expected.put("1646816255", "20.5");
+    expected.put("1646816315", "10.0");
+    expected.put("1646816375", "10.50");
+    expected.put("01646816435", "1");
+    expected.put("1646816495", "n/a");
+    Assertions.assertEquals(expected, columns);
+    Assertions.assertEquals(expected, new HashMap<>(columns));
+  }
+
+  @Test
+  public void testLaterValueReplacesEarlier() {
+    SampleColumns columns = new SampleColumns();
+    Assertions.assertNull(columns.put("1646816195", "10"));
+    Assertions.assertEquals("10", columns.put("1646816195", "11"));
+    Assertions.assertEquals("11", columns.add(1646816195L, 12.5));
+    Assertions.assertNull(columns.add(1646816255L + 60, 1));
+    columns.remove(Long.toString(1646816255L + 60));
+    Assertions.assertEquals(1, columns.size());
+    Assertions.assertEquals("12.5", columns.get("1646816195"));
+
+    columns.put("1646816255", "n/a");
+    columns.add(1646816255L, 3);
+    Assertions.assertEquals(2, columns.size());
+    Assertions.assertEquals("3", columns.get("1646816255"));
+    Assertions.assertEquals("3", columns.remove("1646816255"));
+    Assertions.assertFalse(columns.containsKey("1646816255"));
+  }
+
+  @Test
+  public void testColumnsGrow() {
+    SampleColumns columns = new SampleColumns();
+    for (int i = 0; i < 1000; i++) {
+      columns.add(1646816195L + 60 * i, i);
+    }
+    columns.add(1646816195L, -1);
+    Assertions.assertEquals(1000, columns.size());
+    Assertions.assertEquals("-1", columns.get("1646816195"));
+    Assertions.assertEquals("999", columns.get(Long.toString(1646816195L + 60 * 999)));
+    columns.clear();
+    Assertions.assertTrue(columns.isEmpty());
+  }
+
+  @Test
+  public void testFormat() {
+    Assertions.assertEquals("10", SampleColumns.format(10));
+    Assertions.assertEquals("-0.25", SampleColumns.format(-0.25));
+    Assertions.assertEquals("1.0E20", SampleColumns.format(1e20));
+  }
+}
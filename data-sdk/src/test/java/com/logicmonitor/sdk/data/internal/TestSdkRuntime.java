@@ -0,0 +1,90 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import com.logicmonitor.sdk.data.model.Input;
+import com.logicmonitor.sdk.data.model.MetricsInput;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.openapitools.client.ApiResponse;
+
+public class TestSdkRuntime {
+
+  private static long workerThreads() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.getName().startsWith("lm-data-sdk-worker-"))
+        .count();
+  }
+
+  @Test
+  public void testThreadCountIndependentOfInstances() throws InterruptedException {
+    AtomicInteger merged = new AtomicInteger();
+    for (int i = 0; i < 200; i++) {
+      BatchingCache cache =
+          new BatchingCache(null, 1, true) {
+            @Override
+            protected void mergeRequest() {
+              getRequest().remove();
+              merged.incrementAndGet();
+            }
+
+            @Override
+            protected void doRequest() {}
+
+            @Override
+            protected CompletableFuture<ApiResponse<String>> sendAsync(final Input input) {
+              return CompletableFuture.completedFuture(null);
+            }
+          };
+      cache.addRequest(new MetricsInput());
+    }
+    for (int i = 0; i < 500 && merged.get() < 200; i++) {
+      Thread.sleep(10);
+    }
+    Assertions.assertEquals(200, merged.get());
+    Assertions.assertTrue(workerThreads() <= Configuration.getWorkerThreads());
+  }
+
+  @Test
+  public void testAwaitDrained() throws InterruptedException {
+    // sends left by other tests
+    Assertions.assertTrue(SdkRuntime.awaitDrained(System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+    CompletableFuture<String> future = SdkRuntime.track(new CompletableFuture<>());
+    Assertions.assertFalse(
+        SdkRuntime.awaitDrained(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20)));
+    SdkRuntime.schedule(() -> future.complete("done"), 20);
+    Assertions.assertTrue(SdkRuntime.awaitDrained(System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+    Assertions.assertEquals(0, SdkRuntime.getPending());
+  }
+
+  @Test
+  public void testTasksRunOnVirtualThreadsWhereSupported() throws Exception {
+    CompletableFuture<String> name = new CompletableFuture<>();
+    SdkRuntime.tasks().execute(() -> name.complete(Thread.currentThread().getName()));
+    Assertions.assertTrue(
+        name.get(5, TimeUnit.SECONDS)
+            .startsWith(
+                VirtualThreads.isSupported() ? "lm-data-sdk-virtual-" : "lm-data-sdk-worker-"));
+    Configuration.setVirtualThreads(false);
+    try {
+      Assertions.assertSame(SdkRuntime.executor(), SdkRuntime.tasks());
+    } finally {
+      Configuration.setVirtualThreads(true);
+    }
+  }
+
+  @Test
+  public void testInvalidWorkerThreads() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> Configuration.setWorkerThreads(0));
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import com.logicmonitor.sdk.data.Configuration;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestSharedApiClient {
+
+  private final int defaultPoolSize = Configuration.getConnectionPoolMaxsize();
+
+  @After
+  public void tearDown() {
+    Configuration.setConnectionPoolMaxsize(defaultPoolSize);
+    SharedApiClient.reset();
+  }
+
+  @Test
+  public void testSameClientForEveryCaller() {
+    Assertions.assertSame(
+        SharedApiClient.getInstance(""), SharedApiClient.getInstance("/test-application"));
+  }
+
+  @Test
+  public void testConnectionPoolSizing() {
+    Configuration.setConnectionPoolMaxsize(7);
+    SharedApiClient.reset();
+    OkHttpClient httpClient = SharedApiClient.getInstance("").getHttpClient();
+    Assertions.assertEquals(7, httpClient.dispatcher().getMaxRequests());
+    Assertions.assertEquals(7, httpClient.dispatcher().getMaxRequestsPerHost());
+  }
+
+  @Test
+  public void testResetCreatesNewClient() {
+    Object first = SharedApiClient.getInstance("");
+    SharedApiClient.reset();
+    Assertions.assertNotSame(first, SharedApiClient.getInstance(""));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidConnectionPoolSize() {
+    Configuration.setConnectionPoolMaxsize(0);
+  }
+}
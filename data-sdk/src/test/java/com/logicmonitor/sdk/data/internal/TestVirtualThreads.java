@@ -0,0 +1,43 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.internal;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TestVirtualThreads {
+
+  private static boolean java21() {
+    final String version = System.getProperty("java.specification.version");
+    return !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+  }
+
+  @Test
+  public void testSupportedFromJava21() {
+    Assertions.assertEquals(java21(), VirtualThreads.isSupported());
+  }
+
+  @Test
+  public void testNewExecutor() throws Exception {
+    if (!VirtualThreads.isSupported()) {
+      Assertions.assertThrows(
+          UnsupportedOperationException.class, () -> VirtualThreads.newExecutor("test-"));
+      return;
+    }
+    ExecutorService executor = VirtualThreads.newExecutor("test-");
+    try {
+      Future<String> name = executor.submit(() -> Thread.currentThread().getName());
+      Assertions.assertEquals("test-1", name.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.transport;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.Deflater;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.ApiResponse;
+
+public class TestInMemoryTransport {
+
+  private TransportRequest request(boolean gzip) {
+    StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < 200; i++) {
+      json.append("{\"resourceName\":\"Java_Data_SDK_Test\",\"value\":").append(i).append("},");
+    }
+    json.setCharAt(json.length() - 1, ']');
+    return TransportRequest.builder()
+        .method("POST")
+        .url("https://company.logicmonitor.com/rest/v2/metric/ingest")
+        .headers(Collections.emptyMap())
+        .body(json.toString().getBytes(StandardCharsets.UTF_8))
+        .gzip(gzip)
+        .compressionLevel(Deflater.DEFAULT_COMPRESSION)
+        .build();
+  }
+
+  @Test
+  public void testCountsRequestsAndBytes() throws ApiException {
+    InMemoryTransport transport = new InMemoryTransport();
+    TransportRequest plain = request(false);
+    ApiResponse<String> response = transport.execute(plain);
+    Assertions.assertEquals(202, response.getStatusCode());
+    Assertions.assertEquals(1, transport.getRequestCount());
+    Assertions.assertEquals(plain.getBody().length, transport.getBytesWritten());
+    Assertions.assertSame(plain, transport.getLastRequest());
+  }
+
+  @Test
+  public void testCountsCompressedBytes() throws ApiException {
+    InMemoryTransport transport = new InMemoryTransport();
+    TransportRequest compressed = request(true);
+    transport.execute(compressed);
+    Assertions.assertTrue(transport.getBytesWritten() > 0);
+    Assertions.assertTrue(transport.getBytesWritten() < compressed.getBody().length);
+  }
+
+  @Test
+  public void testErrorStatus() {
+    InMemoryTransport transport = new InMemoryTransport(503);
+    ExecutionException e =
+        Assertions.assertThrows(
+            ExecutionException.class, () -> transport.executeAsync(request(false)).get());
+    Assertions.assertEquals(503, ((ApiException) e.getCause()).getCode());
+    Assertions.assertEquals(1, transport.getRequestCount());
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.transport;
+
+import com.logicmonitor.sdk.data.LocalIngestServer;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.ApiResponse;
+
+public class TestJdkHttpTransport {
+
+  private final CountDownLatch released = new CountDownLatch(1);
+  private final ExecutorService handlers = Executors.newCachedThreadPool();
+  private LocalIngestServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    Assume.assumeTrue(JdkHttpTransport.isSupported());
+    server = new LocalIngestServer();
+    // accepts the request and never answers it
+    server
+        .getServer()
+        .createContext(
+            "/rest/hang",
+            exchange -> {
+              try {
+                released.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              exchange.close();
+            });
+    server.getServer().setExecutor(handlers);
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    released.countDown();
+    if (server != null) {
+      server.stop();
+    }
+    handlers.shutdownNow();
+  }
+
+  private TransportRequest request(boolean gzip) {
+    return TransportRequest.builder()
+        .method("POST")
+        .url(server.url(LocalIngestServer.INGEST_PATH))
+        .headers(Collections.singletonMap("Content-Type", "application/json"))
+        .body("[{\"resourceName\":\"Java_Data_SDK_Test\"}]".getBytes(StandardCharsets.UTF_8))
+        .gzip(gzip)
+        .compressionLevel(Deflater.DEFAULT_COMPRESSION)
+        .build();
+  }
+
+  @Test
+  public void testExecuteGzip() throws ApiException, IOException {
+    TransportRequest request = request(true);
+    ApiResponse<String> response = new JdkHttpTransport().execute(request);
+    Assertions.assertEquals(202, response.getStatusCode());
+    Assertions.assertEquals("gzip", server.getHeader("Content-Encoding"));
+    Assertions.assertArrayEquals(request.getBody(), server.getGunzippedBody());
+  }
+
+  @Test
+  public void testExecuteAsyncError() {
+    server.setStatus(500);
+    ExecutionException e =
+        Assertions.assertThrows(
+            ExecutionException.class,
+            () -> new JdkHttpTransport().executeAsync(request(false)).get());
+    Assertions.assertEquals(500, ((ApiException) e.getCause()).getCode());
+  }
+
+  @Test
+  public void testUnansweredRequestTimesOut() {
+    TransportRequest request =
+        TransportRequest.builder()
+            .method("POST")
+            .url(server.url("/rest/hang"))
+            .headers(Collections.singletonMap("Content-Type", "application/json"))
+            .body("[]".getBytes(StandardCharsets.UTF_8))
+            .build();
+    JdkHttpTransport transport = new JdkHttpTransport(Duration.ofMillis(200));
+    Assertions.assertTimeoutPreemptively(
+        Duration.ofSeconds(5),
+        () -> {
+          Assertions.assertThrows(ApiException.class, () -> transport.execute(request));
+          ExecutionException e =
+              Assertions.assertThrows(
+                  ExecutionException.class, () -> transport.executeAsync(request).get());
+          Assertions.assertTrue(e.getCause() instanceof ApiException, e.toString());
+        });
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright, 2022, LogicMonitor, Inc.
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. If a copy of the MPL
+ * was not distributed with this file, You can obtain
+ * one at https://mozilla.org/MPL/2.0/.
+ */
+package com.logicmonitor.sdk.data.transport;
+
+import com.logicmonitor.sdk.data.LocalIngestServer;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.ApiResponse;
+
+public class TestOkHttpTransport {
+
+  private final AtomicInteger heads = new AtomicInteger();
+  private LocalIngestServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new LocalIngestServer();
+    server
+        .getServer()
+        .createContext(
+            "/rest",
+            exchange -> {
+              if ("HEAD".equals(exchange.getRequestMethod())) {
+                heads.incrementAndGet();
+              }
+              exchange.sendResponseHeaders(401, -1);
+              exchange.close();
+            });
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop();
+  }
+
+  private TransportRequest request(boolean gzip) {
+    return TransportRequest.builder()
+        .method("POST")
+        .url(server.url(LocalIngestServer.INGEST_PATH))
+        .headers(Collections.singletonMap("Authorization", "LMv1 id:signature:0"))
+        .body("[{\"resourceName\":\"Java_Data_SDK_Test\"}]".getBytes(StandardCharsets.UTF_8))
+        .gzip(gzip)
+        .compressionLevel(Deflater.DEFAULT_COMPRESSION)
+        .build();
+  }
+
+  @Test
+  public void testExecuteGzip() throws ApiException, IOException {
+    TransportRequest request = request(true);
+    ApiResponse<String> response = new OkHttpTransport(new ApiClient()).execute(request);
+    Assertions.assertEquals(202, response.getStatusCode());
+    Assertions.assertEquals("gzip", server.getHeader("Content-Encoding"));
+    Assertions.assertEquals("LMv1 id:signature:0", server.getHeader("Authorization"));
+    Assertions.assertArrayEquals(request.getBody(), server.getGunzippedBody());
+  }
+
+  @Test
+  public void testExecuteAsyncPlain() throws Exception {
+    TransportRequest request = request(false);
+    ApiResponse<String> response =
+        new OkHttpTransport(new ApiClient()).executeAsync(request).get();
+    Assertions.assertEquals(202, response.getStatusCode());
+    Assertions.assertNull(server.getHeader("Content-Encoding"));
+    Assertions.assertArrayEquals(request.getBody(), server.getBody());
+  }
+
+  @Test
+  public void testExecuteError() {
+    server.setStatus(500);
+    ApiException e =
+        Assertions.assertThrows(
+            ApiException.class, () -> new OkHttpTransport(new ApiClient()).execute(request(false)));
+    Assertions.assertEquals(500, e.getCode());
+  }
+
+  @Test
+  public void testExecuteAsyncError() {
+    server.setStatus(429);
+    ExecutionException e =
+        Assertions.assertThrows(
+            ExecutionException.class,
+            () -> new OkHttpTransport(new ApiClient()).executeAsync(request(false)).get());
+    Assertions.assertTrue(e.getCause() instanceof ApiException);
+    Assertions.assertEquals(429, ((ApiException) e.getCause()).getCode());
+  }
+
+  @Test
+  public void testWarmUp() throws Exception {
+    OkHttpTransport transport = new OkHttpTransport(new ApiClient());
+    String url = server.url("/rest");
+    CompletableFuture<Duration> warmUp = transport.warmUp(url, 2);
+    Assertions.assertFalse(warmUp.get().isNegative());
+    Assertions.assertEquals(2, heads.get());
+    Assertions.assertSame(warmUp, transport.warmUp(url, 2));
+    Assertions.assertTrue(
+        transport.getApiClient().getHttpClient().connectionPool().connectionCount() > 0);
+  }
+}